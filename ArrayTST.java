@@ -0,0 +1,261 @@
+/*************************************************************************
+ *  Compilation:  javac ArrayTST.java
+ *
+ *  Symbol table with byte-string keys and int values, implemented using
+ *  a ternary search trie whose nodes live in parallel arrays.
+ *
+ *************************************************************************/
+
+/**
+ *  The <tt>ArrayTST</tt> class is a ternary search trie like {@link TST},
+ *  specialized for the LZW compressors: keys are ranges of <tt>byte</tt>
+ *  arrays, each byte standing for the 8-bit character of the same value,
+ *  and values are nonnegative <tt>int</tt>s, with -1 for a missing key.
+ *  <p>
+ *  Nodes are not objects but indices into parallel arrays of characters,
+ *  left, middle and right links, and values, so a trie of any size is five
+ *  arrays, neighboring nodes are close in memory, and there are no boxed
+ *  values. Nodes are handed out in order from the front of the arrays,
+ *  which double when full, and <em>clear</em> takes constant time: it
+ *  forgets every node by resetting the count, and each node is
+ *  initialized again when it is handed out anew. A trie that is cleared
+ *  and refilled, as an LZW codebook is, allocates nothing once its arrays
+ *  have grown to fit.
+ *  <p>
+ *  Like {@link TST}, a longest-prefix match records the node where the
+ *  matched key ends, so <em>insertChild</em> can add that key plus one
+ *  character by searching only the siblings below it. Keys cannot be
+ *  deleted.
+ */
+public class ArrayTST {
+    private static final int NIL = -1;      // no node, and no value
+
+    private char[] c;                       // c[x] = character of node x
+    private int[] left, mid, right;         // links of node x, or NIL
+    private int[] val;                      // value of the key ending at node x, or NIL
+    private int nodes;                      // number of nodes in use
+    private int root = NIL;                 // root of the trie
+    private int N;                          // number of keys
+
+    /**
+     * The result of a longest-prefix match: the length of the longest key
+     * that is a prefix of the query, the value associated with that key,
+     * and the node where the key ends, for
+     * {@link ArrayTST#insertChild(Match, int, int)}.
+     * A single instance can be reused across calls.
+     */
+    public static class Match {
+        private int length;                 // length of matched key, or 0 if none
+        private int val = NIL;              // value of matched key, or -1 if none
+        private int node = NIL;             // node of the last character of matched key, or NIL
+
+        /**
+         * Returns the length of the matched key.
+         * @return the length of the matched key, or 0 if no key matched
+         */
+        public int length() {
+            return length;
+        }
+
+        /**
+         * Returns the value associated with the matched key.
+         * @return the value associated with the matched key, or -1 if no key matched
+         */
+        public int value() {
+            return val;
+        }
+    }
+
+    /**
+     * Initializes an empty symbol table with room for 1024 nodes.
+     */
+    public ArrayTST() {
+        this(1 << 10);
+    }
+
+    /**
+     * Initializes an empty symbol table with room for the given number of
+     * nodes before the arrays grow.
+     * @param capacity the initial number of nodes
+     * @throws IllegalArgumentException unless <tt>capacity</tt> &ge; 1
+     */
+    public ArrayTST(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be >= 1");
+        c = new char[capacity];
+        left = new int[capacity];
+        mid = new int[capacity];
+        right = new int[capacity];
+        val = new int[capacity];
+    }
+
+    /**
+     * Returns the number of keys in this symbol table.
+     * @return the number of keys in this symbol table
+     */
+    public int size() {
+        return N;
+    }
+
+    /**
+     * Removes every key, in constant time, keeping the arrays.
+     */
+    public void clear() {
+        nodes = 0;
+        root = NIL;
+        N = 0;
+    }
+
+    /**
+     * Returns the value associated with the key <tt>key[from, from+length)</tt>.
+     * @param key the bytes holding the key
+     * @param from the offset of the first byte of the key
+     * @param length the length of the key
+     * @return the value associated with the key, or -1 if the key is not in
+     *     the symbol table
+     * @throws IllegalArgumentException unless <tt>length</tt> &ge; 1
+     */
+    public int get(byte[] key, int from, int length) {
+        if (length <= 0) throw new IllegalArgumentException("key must have length >= 1");
+        int end = from + length;
+        int d = from;
+        int x = root;
+        while (x != NIL) {
+            char ch = (char) (key[d] & 0xff);
+            if      (ch < c[x])    x = left[x];
+            else if (ch > c[x])    x = right[x];
+            else if (d < end - 1) { x = mid[x]; d++; }
+            else                   return val[x];
+        }
+        return NIL;
+    }
+
+    /**
+     * Inserts the key <tt>key[from, from+length)</tt> with the given value,
+     * overwriting the old value if the key is already in the symbol table.
+     * @param key the bytes holding the key
+     * @param from the offset of the first byte of the key
+     * @param length the length of the key
+     * @param value the value
+     * @throws IllegalArgumentException unless <tt>length</tt> &ge; 1 and
+     *     <tt>value</tt> &ge; 0
+     */
+    public void put(byte[] key, int from, int length, int value) {
+        if (length <= 0) throw new IllegalArgumentException("key must have length >= 1");
+        if (value < 0) throw new IllegalArgumentException("Illegal value " + value);
+        int end = from + length;
+        int d = from;
+        if (root == NIL) root = node(key[d] & 0xff);
+        int x = root;
+        while (true) {
+            char ch = (char) (key[d] & 0xff);
+            if (ch < c[x]) {
+                if (left[x] == NIL) { int y = node(key[d] & 0xff); left[x] = y; }
+                x = left[x];
+            }
+            else if (ch > c[x]) {
+                if (right[x] == NIL) { int y = node(key[d] & 0xff); right[x] = y; }
+                x = right[x];
+            }
+            else if (d < end - 1) {
+                d++;
+                if (mid[x] == NIL) { int y = node(key[d] & 0xff); mid[x] = y; }
+                x = mid[x];
+            }
+            else {
+                set(x, value);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Inserts the key formed by the key of a match followed by the byte
+     * <tt>b</tt>, with the given value, overwriting the old value if the
+     * key is already in the symbol table. Only the siblings below the node
+     * where the matched key ends are searched. The match must come from a
+     * longest-prefix match on this symbol table since it was last cleared.
+     * @param match a match of at least one byte
+     * @param b the byte extending the matched key, from 0 to 255
+     * @param value the value
+     * @throws IllegalArgumentException if no key was matched, or
+     *     <tt>value</tt> &lt; 0
+     */
+    public void insertChild(Match match, int b, int value) {
+        if (match.node == NIL) throw new IllegalArgumentException("no key was matched");
+        if (value < 0) throw new IllegalArgumentException("Illegal value " + value);
+        int x = match.node;
+        if (mid[x] == NIL) { int y = node(b); mid[x] = y; }
+        x = mid[x];
+        while (b != c[x]) {
+            if (b < c[x]) {
+                if (left[x] == NIL) { int y = node(b); left[x] = y; }
+                x = left[x];
+            }
+            else {
+                if (right[x] == NIL) { int y = node(b); right[x] = y; }
+                x = right[x];
+            }
+        }
+        set(x, value);
+    }
+
+    /**
+     * Finds the longest key in the symbol table that is a prefix of
+     * <tt>query[from, to)</tt>, without copying the query.
+     * @param query the query bytes
+     * @param from the offset in <tt>query</tt> at which to start matching
+     * @param to one past the offset of the last byte that may be matched
+     * @param match if not <tt>null</tt>, receives the length, value and node of the match
+     * @return the length of the longest matching key, or 0 if no key matches
+     */
+    public int longestPrefixOf(byte[] query, int from, int to, Match match) {
+        int length = 0;
+        int value = NIL;
+        int last = NIL;
+        int x = root;
+        int i = from;
+        while (x != NIL && i < to) {
+            char ch = (char) (query[i] & 0xff);
+            if      (ch < c[x]) x = left[x];
+            else if (ch > c[x]) x = right[x];
+            else {
+                i++;
+                if (val[x] != NIL) { length = i - from; value = val[x]; last = x; }
+                x = mid[x];
+            }
+        }
+        if (match != null) {
+            match.length = length;
+            match.val = value;
+            match.node = last;
+        }
+        return length;
+    }
+
+    // associate value with the key ending at x, counting the key if it is new
+    private void set(int x, int value) {
+        if (val[x] == NIL) N++;
+        val[x] = value;
+    }
+
+    // a new node with no links or value for character ch; the arrays may
+    // grow, so callers store the result only after the call returns
+    private int node(int ch) {
+        if (nodes == c.length) resize(2 * c.length);
+        c[nodes] = (char) ch;
+        left[nodes] = NIL;
+        mid[nodes] = NIL;
+        right[nodes] = NIL;
+        val[nodes] = NIL;
+        return nodes++;
+    }
+
+    // move the nodes to arrays of the given capacity
+    private void resize(int capacity) {
+        c = java.util.Arrays.copyOf(c, capacity);
+        left = java.util.Arrays.copyOf(left, capacity);
+        mid = java.util.Arrays.copyOf(mid, capacity);
+        right = java.util.Arrays.copyOf(right, capacity);
+        val = java.util.Arrays.copyOf(val, capacity);
+    }
+}
@@ -9,9 +9,6 @@
  *
  *************************************************************************/
 
-import java.io.BufferedInputStream;
-import java.io.IOException;
-
 /**
  *  <i>Binary standard input</i>. This class provides methods for reading
  *  in bits from standard input, either one bit at a time (as a <tt>boolean</tt>),
@@ -27,39 +24,25 @@ import java.io.IOException;
  *  The client should not intermix calls to <tt>BinaryStdIn</tt> with calls
  *  to <tt>StdIn</tt> or <tt>System.in</tt>;
  *  otherwise unexpected behavior will result.
+ *  <p>
+ *  This class is a static adapter over a {@link BitReader} bound to
+ *  standard input; use a <tt>BitReader</tt> directly to read from any
+ *  other stream or channel.
  *
  *  @author Robert Sedgewick
  *  @author Kevin Wayne
  */
 public final class BinaryStdIn {
-    private static BufferedInputStream in = new BufferedInputStream(System.in);
-    private static final int EOF = -1;    // end of file
-
-    private static int buffer;            // one character buffer
-    private static int N;                 // number of bits left in buffer
-
-    // static initializer
-    static { fillBuffer(); }
+    private static BitReader in = new BitReader(System.in);
 
     // don't instantiate
     private BinaryStdIn() { }
 
-    private static void fillBuffer() {
-        try { buffer = in.read(); N = 8; }
-        catch (IOException e) { System.out.println("EOF"); buffer = EOF; N = -1; }
-    }
-
    /**
      * Close this input stream and release any associated system resources.
      */
     public static void close() {
-        try {
-            in.close();
-        }
-        catch (IOException e) {
-            e.printStackTrace();
-            throw new RuntimeException("Could not close BinaryStdIn");
-        }
+        in.close();
     }
 
    /**
@@ -67,7 +50,7 @@ public final class BinaryStdIn {
      * @return true if and only if standard input is empty
      */
     public static boolean isEmpty() {
-        return buffer == EOF;
+        return in.isEmpty();
     }
 
    /**
@@ -76,11 +59,7 @@ public final class BinaryStdIn {
      * @throws RuntimeException if standard input is empty
      */
     public static boolean readBoolean() {
-        if (isEmpty()) throw new RuntimeException("Reading from empty input stream");
-        N--;
-        boolean bit = ((buffer >> N) & 1) == 1;
-        if (N == 0) fillBuffer();
-        return bit;
+        return in.readBoolean();
     }
 
    /**
@@ -91,26 +70,7 @@ public final class BinaryStdIn {
      * @throws RuntimeException if there are fewer than 8 bits available on standard input
      */
     public static char readChar() {
-        if (isEmpty()) throw new RuntimeException("Reading from empty input stream");
-
-        // special case when aligned byte
-        if (N == 8) {
-            int x = buffer;
-            fillBuffer();
-            return (char) (x & 0xff);
-        }
-
-        // combine last N bits of current buffer with first 8-N bits of new buffer
-        int x = buffer;
-        x <<= (8-N);
-        int oldN = N;
-        fillBuffer();
-        if (isEmpty()) throw new RuntimeException("Reading from empty input stream");
-        N = oldN;
-        x |= (buffer >>> N);
-        return (char) (x & 0xff);
-        // the above code doesn't quite work for the last character if N = 8
-        // because buffer will be -1
+        return in.readChar();
     }
 
    /**
@@ -121,18 +81,7 @@ public final class BinaryStdIn {
      * @throws IllegalArgumentException unless 1 &le; r &le; 16
      */
     public static char readChar(int r) {
-        if (r < 1 || r > 16) throw new IllegalArgumentException("Illegal value of r = " + r);
-
-        // optimize r = 8 case
-        if (r == 8) return readChar();
-
-        char x = 0;
-        for (int i = 0; i < r; i++) {
-            x <<= 1;
-            boolean bit = readBoolean();
-            if (bit) x |= 1;
-        }
-        return x;
+        return in.readChar(r);
     }
 
    /**
@@ -142,30 +91,16 @@ public final class BinaryStdIn {
      * available on standard input is not a multiple of 8 (byte-aligned)
      */
     public static String readString() {
-        if (isEmpty()) throw new RuntimeException("Reading from empty input stream");
-
-        StringBuilder sb = new StringBuilder();
-        while (!isEmpty()) {
-            char c = readChar();
-            sb.append(c);
-        }
-        return sb.toString();
+        return in.readString();
     }
 
-
    /**
      * Read the next 16 bits from standard input and return as a 16-bit short.
      * @return the next 16 bits of data from standard input as a <tt>short</tt>
      * @throws RuntimeException if there are fewer than 16 bits available on standard input
      */
     public static short readShort() {
-        short x = 0;
-        for (int i = 0; i < 2; i++) {
-            char c = readChar();
-            x <<= 8;
-            x |= c;
-        }
-        return x;
+        return in.readShort();
     }
 
    /**
@@ -174,13 +109,7 @@ public final class BinaryStdIn {
      * @throws RuntimeException if there are fewer than 32 bits available on standard input
      */
     public static int readInt() {
-        int x = 0;
-        for (int i = 0; i < 4; i++) {
-            char c = readChar();
-            x <<= 8;
-            x |= c;
-        }
-        return x;
+        return in.readInt();
     }
 
    /**
@@ -191,18 +120,33 @@ public final class BinaryStdIn {
      * @throws IllegalArgumentException unless 1 &le; r &le; 32
      */
     public static int readInt(int r) {
-        if (r < 1 || r > 32) throw new IllegalArgumentException("Illegal value of r = " + r);
+        return in.readInt(r);
+    }
 
-        // optimize r = 32 case
-        if (r == 32) return readInt();
+   /**
+     * Read the next r bits from standard input and return as an r-bit long,
+     * most significant bit first. The bits are taken from a 64-bit accumulator
+     * that is refilled a whole byte at a time, so the cost does not depend on <tt>r</tt>.
+     * @param r number of bits to read.
+     * @return the next r bits of data from standard input as a <tt>long</tt>
+     * @throws RuntimeException if there are fewer than r bits available on standard input
+     * @throws IllegalArgumentException unless 1 &le; r &le; 64
+     */
+    public static long readBits(int r) {
+        return in.readBits(r);
+    }
 
-        int x = 0;
-        for (int i = 0; i < r; i++) {
-            x <<= 1;
-            boolean bit = readBoolean();
-            if (bit) x |= 1;
-        }
-        return x;
+   /**
+     * Read up to <tt>len</tt> bytes from standard input into <tt>a[off..off+len)</tt>.
+     * When the input is byte-aligned the bytes are copied in bulk.
+     * @param a the array receiving the bytes
+     * @param off the offset of the first byte
+     * @param len the maximum number of bytes to read
+     * @return the number of bytes read, which is less than <tt>len</tt> only
+     *     if standard input is exhausted
+     */
+    public static int read(byte[] a, int off, int len) {
+        return in.read(a, off, len);
     }
 
    /**
@@ -211,23 +155,16 @@ public final class BinaryStdIn {
      * @throws RuntimeException if there are fewer than 64 bits available on standard input
      */
     public static long readLong() {
-        long x = 0;
-        for (int i = 0; i < 8; i++) {
-            char c = readChar();
-            x <<= 8;
-            x |= c;
-        }
-        return x;
+        return in.readLong();
     }
 
-
    /**
      * Read the next 64 bits from standard input and return as a 64-bit double.
      * @return the next 64 bits of data from standard input as a <tt>double</tt>
      * @throws RuntimeExceptionArgument if there are fewer than 64 bits available on standard input
      */
     public static double readDouble() {
-        return Double.longBitsToDouble(readLong());
+        return in.readDouble();
     }
 
    /**
@@ -236,21 +173,18 @@ public final class BinaryStdIn {
      * @throws RuntimeException if there are fewer than 32 bits available on standard input
      */
     public static float readFloat() {
-        return Float.intBitsToFloat(readInt());
+        return in.readFloat();
     }
 
-
    /**
      * Read the next 8 bits from standard input and return as an 8-bit byte.
      * @return the next 8 bits of data from standard input as a <tt>byte</tt>
      * @throws RuntimeException if there are fewer than 8 bits available on standard input
      */
     public static byte readByte() {
-        char c = readChar();
-        byte x = (byte) (c & 0xff);
-        return x;
+        return in.readByte();
     }
-    
+
    /**
      * Test client. Reads in a binary input file from standard input and writes
      * it to standard output.
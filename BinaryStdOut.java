@@ -10,9 +10,6 @@
  *
  *************************************************************************/
 
-import java.io.BufferedOutputStream;
-import java.io.IOException;
-
 /**
  *  <i>Binary standard output</i>. This class provides methods for converting
  *  primtive type variables (<tt>boolean</tt>, <tt>byte</tt>, <tt>char</tt>,
@@ -25,70 +22,26 @@ import java.io.IOException;
  *  The client should not intermixing calls to <tt>BinaryStdOut</tt> with calls
  *  to <tt>StdOut</tt> or <tt>System.out</tt>; otherwise unexpected behavior 
  *  will result.
+ *  <p>
+ *  This class is a static adapter over a {@link BitWriter} bound to
+ *  standard output; use a <tt>BitWriter</tt> directly to write to any
+ *  other stream or channel.
  *
  *  @author Robert Sedgewick
  *  @author Kevin Wayne
  */
 public final class BinaryStdOut {
-    private static BufferedOutputStream out = new BufferedOutputStream(System.out);
-
-    private static int buffer;     // 8-bit buffer of bits to write out
-    private static int N;          // number of bits remaining in buffer
+    private static BitWriter out = new BitWriter(System.out);
 
     // don't instantiate
     private BinaryStdOut() { }
 
-   /**
-     * Write the specified bit to standard output.
-     */
-    private static void writeBit(boolean bit) {
-        // add bit to buffer
-        buffer <<= 1;
-        if (bit) buffer |= 1;
-
-        // if buffer is full (8 bits), write out as a single byte
-        N++;
-        if (N == 8) clearBuffer();
-    } 
-
-   /**
-     * Write the 8-bit byte to standard output.
-     */
-    private static void writeByte(int x) {
-        assert x >= 0 && x < 256;
-
-        // optimized if byte-aligned
-        if (N == 0) {
-            try { out.write(x); }
-            catch (IOException e) { e.printStackTrace(); }
-            return;
-        }
-
-        // otherwise write one bit at a time
-        for (int i = 0; i < 8; i++) {
-            boolean bit = ((x >>> (8 - i - 1)) & 1) == 1;
-            writeBit(bit);
-        }
-    }
-
-    // write out any remaining bits in buffer to standard output, padding with 0s
-    private static void clearBuffer() {
-        if (N == 0) return;
-        if (N > 0) buffer <<= (8 - N);
-        try { out.write(buffer); }
-        catch (IOException e) { e.printStackTrace(); }
-        N = 0;
-        buffer = 0;
-    }
-
    /**
      * Flush standard output, padding 0s if number of bits written so far
      * is not a multiple of 8.
      */
     public static void flush() {
-        clearBuffer();
-        try { out.flush(); }
-        catch (IOException e) { e.printStackTrace(); }
+        out.flush();
     }
 
    /**
@@ -96,26 +49,23 @@ public final class BinaryStdOut {
      * longer write bits to it.
      */
     public static void close() {
-        flush();
-        try { out.close(); }
-        catch (IOException e) { e.printStackTrace(); }
+        out.close();
     }
 
-
    /**
      * Write the specified bit to standard output.
      * @param x the <tt>boolean</tt> to write.
      */
     public static void write(boolean x) {
-        writeBit(x);
-    } 
+        out.write(x);
+    }
 
    /**
      * Write the 8-bit byte to standard output.
      * @param x the <tt>byte</tt> to write.
      */
     public static void write(byte x) {
-        writeByte(x & 0xff);
+        out.write(x);
     }
 
    /**
@@ -123,10 +73,7 @@ public final class BinaryStdOut {
      * @param x the <tt>int</tt> to write.
      */
     public static void write(int x) {
-        writeByte((x >>> 24) & 0xff);
-        writeByte((x >>> 16) & 0xff);
-        writeByte((x >>>  8) & 0xff);
-        writeByte((x >>>  0) & 0xff);
+        out.write(x);
     }
 
    /**
@@ -137,25 +84,28 @@ public final class BinaryStdOut {
      * @throws IllegalArgumentException if <tt>x</tt> is not between 0 and 2<sup>r</sup> - 1.
      */
     public static void write(int x, int r) {
-        if (r == 32) { write(x); return; }
-        if (r < 1 || r > 32)        throw new IllegalArgumentException("Illegal value for r = " + r);
-        if (x < 0 || x >= (1 << r)) throw new IllegalArgumentException("Illegal " + r + "-bit char = " + x);
-        for (int i = 0; i < r; i++) {
-            boolean bit = ((x >>> (r - i - 1)) & 1) == 1;
-            writeBit(bit);
-        }
+        out.write(x, r);
     }
 
-
-
-
+   /**
+     * Write the r-bit value to standard output, most significant bit first.
+     * The bits go through a 64-bit accumulator that is emptied a whole byte
+     * at a time, so the cost does not depend on <tt>r</tt>.
+     * @param x the value to write.
+     * @param r the number of relevant bits in the value.
+     * @throws IllegalArgumentException if <tt>r</tt> is not between 1 and 64.
+     * @throws IllegalArgumentException if <tt>x</tt> is not between 0 and 2<sup>r</sup> - 1.
+     */
+    public static void writeBits(long x, int r) {
+        out.writeBits(x, r);
+    }
 
    /**
      * Write the 64-bit double to standard output.
      * @param x the <tt>double</tt> to write.
      */
     public static void write(double x) {
-        write(Double.doubleToRawLongBits(x));
+        out.write(x);
     }
 
    /**
@@ -163,14 +113,7 @@ public final class BinaryStdOut {
      * @param x the <tt>long</tt> to write.
      */
     public static void write(long x) {
-        writeByte((int) ((x >>> 56) & 0xff));
-        writeByte((int) ((x >>> 48) & 0xff));
-        writeByte((int) ((x >>> 40) & 0xff));
-        writeByte((int) ((x >>> 32) & 0xff));
-        writeByte((int) ((x >>> 24) & 0xff));
-        writeByte((int) ((x >>> 16) & 0xff));
-        writeByte((int) ((x >>>  8) & 0xff));
-        writeByte((int) ((x >>>  0) & 0xff));
+        out.write(x);
     }
 
    /**
@@ -178,7 +121,7 @@ public final class BinaryStdOut {
      * @param x the <tt>float</tt> to write.
      */
     public static void write(float x) {
-        write(Float.floatToRawIntBits(x));
+        out.write(x);
     }
 
    /**
@@ -186,8 +129,7 @@ public final class BinaryStdOut {
      * @param x the <tt>short</tt> to write.
      */
     public static void write(short x) {
-        writeByte((x >>>  8) & 0xff);
-        writeByte((x >>>  0) & 0xff);
+        out.write(x);
     }
 
    /**
@@ -196,8 +138,7 @@ public final class BinaryStdOut {
      * @throws IllegalArgumentException if <tt>x</tt> is not betwen 0 and 255.
      */
     public static void write(char x) {
-        if (x < 0 || x >= 256) throw new IllegalArgumentException("Illegal 8-bit char = " + x);
-        writeByte(x);
+        out.write(x);
     }
 
    /**
@@ -208,13 +149,7 @@ public final class BinaryStdOut {
      * @throws IllegalArgumentException if <tt>x</tt> is not between 0 and 2<sup>r</sup> - 1.
      */
     public static void write(char x, int r) {
-        if (r == 8) { write(x); return; }
-        if (r < 1 || r > 16)        throw new IllegalArgumentException("Illegal value for r = " + r);
-        if (x < 0 || x >= (1 << r)) throw new IllegalArgumentException("Illegal " + r + "-bit char = " + x);
-        for (int i = 0; i < r; i++) {
-            boolean bit = ((x >>> (r - i - 1)) & 1) == 1;
-            writeBit(bit);
-        }
+        out.write(x, r);
     }
 
    /**
@@ -224,8 +159,18 @@ public final class BinaryStdOut {
      * between 0 and 255.
      */
     public static void write(String s) {
-        for (int i = 0; i < s.length(); i++)
-            write(s.charAt(i));
+        out.write(s);
+    }
+
+   /**
+     * Write the bytes <tt>a[off..off+len)</tt> to standard output.
+     * When the output is byte-aligned the bytes are copied in bulk.
+     * @param a the array holding the bytes
+     * @param off the offset of the first byte
+     * @param len the number of bytes to write
+     */
+    public static void write(byte[] a, int off, int len) {
+        out.write(a, off, len);
     }
 
    /**
@@ -237,8 +182,7 @@ public final class BinaryStdOut {
      * between 0 and 2<sup>r</sup> - 1.
      */
     public static void write(String s, int r) {
-        for (int i = 0; i < s.length(); i++)
-            write(s.charAt(i), r);
+        out.write(s, r);
     }
 
    /**
@@ -252,5 +196,4 @@ public final class BinaryStdOut {
         }
         BinaryStdOut.flush();
     }
-
 }
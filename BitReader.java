@@ -0,0 +1,449 @@
+/*************************************************************************
+ *  Compilation:  javac BitReader.java
+ *
+ *  Read binary data from an input stream, channel, buffer or memory-mapped
+ *  file, either one 1-bit boolean, one r-bit value, one 8-bit char, one
+ *  16-bit short, one 32-bit int, or one 64-bit long at a time.
+ *
+ *************************************************************************/
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ *  The <tt>BitReader</tt> class reads bits from an {@link InputStream},
+ *  a {@link ReadableByteChannel}, a {@link ByteBuffer}, or a file mapped
+ *  into memory a window at a time, either one bit at a time (as a <tt>boolean</tt>),
+ *  <em>r</em> bits at a time (as an <tt>int</tt> or <tt>long</tt>),
+ *  8 bits at a time (as a <tt>byte</tt> or <tt>char</tt>),
+ *  16 bits at a time (as a <tt>short</tt>), 32 bits at a time
+ *  (as an <tt>int</tt> or <tt>float</tt>), or 64 bits at a time (as a
+ *  <tt>double</tt> or <tt>long</tt>).
+ *  <p>
+ *  All primitive types are assumed to be represented using their
+ *  standard Java representations, in big-endian (most significant
+ *  byte first) order.
+ *  <p>
+ *  Bytes of a buffer or mapped file go straight into the accumulator,
+ *  without passing through the read buffer. A channel is read into a
+ *  {@link ByteBuffer}, by default a direct one, that the accumulator also
+ *  reads straight from, so a channel that does native I/O fills it without
+ *  the copy through a heap array that a stream needs. Callers that pool
+ *  buffers can supply their own.
+ *  <p>
+ *  Each instance keeps its own 64-bit accumulator and read buffer, so any
+ *  number of readers can be in use at once, one per thread.
+ *  I/O errors are rethrown as {@link UncheckedIOException}.
+ *  <p>
+ *  {@link BinaryStdIn} is a static adapter over a reader bound to standard input.
+ */
+public class BitReader implements AutoCloseable {
+    private static final int EOF = -1;         // end of file
+    private static final long WINDOW = 1L << 30;  // bytes of a file mapped at once
+
+    private final InputStream in;              // source, or null if not a stream
+    private final ReadableByteChannel channel; // source, or null if not a channel
+    private ByteBuffer source;                 // source or channel's read buffer, or null if stream
+    private final FileChannel file;            // file mapped into source, or null
+    private long mapped;                       // bytes of file mapped so far
+
+    private long buffer;    // 64-bit accumulator; the low N bits are unread
+    private int N;          // number of bits left in buffer
+
+    private final byte[] bytes;                   // bytes read but not yet in buffer, or null if not a stream
+    private int pos;                              // next byte of bytes[]
+    private int limit;                            // number of valid bytes in bytes[]
+
+    /**
+     * Initializes a bit reader over the given input stream.
+     * @param in the input stream
+     * @throws NullPointerException if <tt>in</tt> is <tt>null</tt>
+     */
+    public BitReader(InputStream in) {
+        if (in == null) throw new NullPointerException();
+        this.in = in;
+        this.channel = null;
+        this.file = null;
+        this.bytes = new byte[8192];
+    }
+
+    /**
+     * Initializes a bit reader over the given channel, read through a
+     * 64 KB direct buffer.
+     * @param channel the channel
+     * @throws NullPointerException if <tt>channel</tt> is <tt>null</tt>
+     */
+    public BitReader(ReadableByteChannel channel) {
+        this(channel, ByteBuffer.allocateDirect(1 << 16));
+    }
+
+    /**
+     * Initializes a bit reader over the given channel, read through the given
+     * buffer. The buffer's contents are overwritten, and it belongs to the
+     * reader until the reader is no longer used, when it can go back to a pool.
+     * A direct buffer saves the channel a copy.
+     * @param channel the channel
+     * @param buffer the read buffer
+     * @throws NullPointerException if <tt>channel</tt> or <tt>buffer</tt> is <tt>null</tt>
+     * @throws IllegalArgumentException if <tt>buffer</tt> has no capacity
+     *     or is read-only
+     */
+    public BitReader(ReadableByteChannel channel, ByteBuffer buffer) {
+        if (channel == null || buffer == null) throw new NullPointerException();
+        if (buffer.capacity() == 0 || buffer.isReadOnly()) throw new IllegalArgumentException("Unusable read buffer");
+        this.in = null;
+        this.channel = channel;
+        this.source = buffer.clear().flip();
+        this.file = null;
+        this.bytes = null;
+    }
+
+    /**
+     * Initializes a bit reader over the remaining bytes of the given buffer.
+     * Reading advances the buffer's position.
+     * @param source the buffer
+     * @throws NullPointerException if <tt>source</tt> is <tt>null</tt>
+     */
+    public BitReader(ByteBuffer source) {
+        this(source, null);
+    }
+
+    // a reader over source, followed by the unmapped rest of file if not null
+    private BitReader(ByteBuffer source, FileChannel file) {
+        if (source == null) throw new NullPointerException();
+        this.in = null;
+        this.channel = null;
+        this.source = source;
+        this.file = file;
+        this.bytes = null;
+    }
+
+    /**
+     * Returns a bit reader over the given file that maps the file into memory
+     * a window of at most 1 GB at a time, so files of any size can be read
+     * without copying them through the heap. Closing the reader closes the file.
+     * @param file the file, positioned anywhere; reading starts at its first byte
+     * @return a bit reader over the file
+     */
+    public static BitReader map(FileChannel file) {
+        return new BitReader(ByteBuffer.allocate(0), file);
+    }
+
+    // refill source from the channel, or map the next window of file into it;
+    // return false at end of input
+    private boolean refill() {
+        try {
+            if (channel != null) {
+                source.clear();
+                while (source.position() == 0 && channel.read(source) != EOF) { }
+                source.flip();
+                return source.hasRemaining();
+            }
+            if (file == null) return false;
+            long n = Math.min(file.size() - mapped, WINDOW);
+            if (n <= 0) return false;
+            source = file.map(FileChannel.MapMode.READ_ONLY, mapped, n);
+            mapped += n;
+            return true;
+        }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+
+    // refill bytes[] from the stream; return false at end of input
+    private boolean fillBytes() {
+        if (limit == EOF) return false;
+        try {
+            limit = in.read(bytes, 0, bytes.length);
+        }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+        pos = 0;
+        return limit > 0;
+    }
+
+    // read from the stream into a[off..off+len), bypassing bytes[]; return
+    // the number of bytes read, or 0 at end of input
+    private int readStream(byte[] a, int off, int len) {
+        if (limit == EOF) return 0;
+        int k;
+        try {
+            k = in.read(a, off, len);
+        }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+        if (k < 0) limit = EOF;
+        return Math.max(k, 0);
+    }
+
+    // top up the accumulator a whole byte at a time, up to 56 bits or end of
+    // input, reading from the input only while it holds fewer than r bits, so
+    // a read never waits on a pipe or socket for bits it was not asked for
+    private void fillBuffer(int r) {
+        if (source != null) {
+            if (N <= 32 && source.remaining() >= 4) {
+                int x = source.getInt();
+                if (source.order() == ByteOrder.LITTLE_ENDIAN) x = Integer.reverseBytes(x);
+                buffer = (buffer << 32) | (x & 0xffffffffL);
+                N += 32;
+            }
+            while (N <= 56) {
+                if (!source.hasRemaining() && (N >= r || !refill())) return;
+                buffer = (buffer << 8) | (source.get() & 0xff);
+                N += 8;
+            }
+            return;
+        }
+        while (N <= 56) {
+            if (pos >= limit && (N >= r || !fillBytes())) return;
+            buffer = (buffer << 8) | (bytes[pos++] & 0xff);
+            N += 8;
+        }
+    }
+
+    // return the next r bits, 1 <= r <= 56
+    private long take(int r) {
+        if (N < r) {
+            fillBuffer(r);
+            if (N < r) throw new RuntimeException("Reading from empty input stream");
+        }
+        N -= r;
+        return (buffer >>> N) & ((1L << r) - 1);
+    }
+
+   /**
+     * Close the input and release any associated system resources.
+     */
+    public void close() {
+        try {
+            if      (in != null)      in.close();
+            else if (channel != null) channel.close();
+            else if (file != null)    file.close();
+        }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+
+   /**
+     * Returns true if the input is empty.
+     * @return true if and only if the input is empty
+     */
+    public boolean isEmpty() {
+        if (N == 0) fillBuffer(1);
+        return N == 0;
+    }
+
+   /**
+     * Skip the bits left in the current byte, so that the next read starts
+     * on a byte boundary. Does nothing if the input is already byte-aligned.
+     */
+    public void align() {
+        N -= N % 8;
+    }
+
+   /**
+     * Read the next bit of data from the input and return as a boolean.
+     * @return the next bit of data from the input as a <tt>boolean</tt>
+     * @throws RuntimeException if the input is empty
+     */
+    public boolean readBoolean() {
+        return take(1) == 1;
+    }
+
+   /**
+     * Read the next 8 bits from the input and return as an 8-bit char.
+     * Note that <tt>char</tt> is a 16-bit type;
+     * to read the next 16 bits as a char, use <tt>readChar(16)</tt>
+     * @return the next 8 bits of data from the input as a <tt>char</tt>
+     * @throws RuntimeException if there are fewer than 8 bits available on the input
+     */
+    public char readChar() {
+        return (char) take(8);
+    }
+
+   /**
+     * Read the next r bits from the input and return as an r-bit character.
+     * @param r number of bits to read.
+     * @return the next r bits of data from the input as a <tt>char</tt>
+     * @throws IllegalArgumentException if there are fewer than r bits available on the input
+     * @throws IllegalArgumentException unless 1 &le; r &le; 16
+     */
+    public char readChar(int r) {
+        if (r < 1 || r > 16) throw new IllegalArgumentException("Illegal value of r = " + r);
+
+        return (char) take(r);
+    }
+
+   /**
+     * Read the remaining bytes of data from the input and return as a string. 
+     * @return the remaining bytes of data from the input as a <tt>String</tt>
+     * @throws RuntimeException if the input is empty or if the number of bits
+     * available on the input is not a multiple of 8 (byte-aligned)
+     */
+    public String readString() {
+        if (isEmpty()) throw new RuntimeException("Reading from empty input stream");
+
+        StringBuilder sb = new StringBuilder();
+        while (!isEmpty()) {
+            char c = readChar();
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+
+   /**
+     * Read the next 16 bits from the input and return as a 16-bit short.
+     * @return the next 16 bits of data from the input as a <tt>short</tt>
+     * @throws RuntimeException if there are fewer than 16 bits available on the input
+     */
+    public short readShort() {
+        return (short) take(16);
+    }
+
+   /**
+     * Read the next 32 bits from the input and return as a 32-bit int.
+     * @return the next 32 bits of data from the input as a <tt>int</tt>
+     * @throws RuntimeException if there are fewer than 32 bits available on the input
+     */
+    public int readInt() {
+        return (int) take(32);
+    }
+
+   /**
+     * Read the next r bits from the input and return as an r-bit int.
+     * @param r number of bits to read.
+     * @return the next r bits of data from the input as a <tt>int</tt>
+     * @throws IllegalArgumentException if there are fewer than r bits available on the input
+     * @throws IllegalArgumentException unless 1 &le; r &le; 32
+     */
+    public int readInt(int r) {
+        if (r < 1 || r > 32) throw new IllegalArgumentException("Illegal value of r = " + r);
+
+        return (int) take(r);
+    }
+
+   /**
+     * Read the next r bits from the input and return as an r-bit long,
+     * most significant bit first. The bits are taken from a 64-bit accumulator
+     * that is refilled a whole byte at a time, so the cost does not depend on <tt>r</tt>.
+     * @param r number of bits to read.
+     * @return the next r bits of data from the input as a <tt>long</tt>
+     * @throws RuntimeException if there are fewer than r bits available on the input
+     * @throws IllegalArgumentException unless 1 &le; r &le; 64
+     */
+    public long readBits(int r) {
+        if (r < 1 || r > 64) throw new IllegalArgumentException("Illegal value of r = " + r);
+        if (r > 56) {
+            long hi = take(r - 32);
+            return (hi << 32) | take(32);
+        }
+        return take(r);
+    }
+
+   /**
+     * Read up to <tt>len</tt> bytes from the input into <tt>a[off..off+len)</tt>.
+     * When the input is byte-aligned the bytes are copied in bulk.
+     * @param a the array receiving the bytes
+     * @param off the offset of the first byte
+     * @param len the maximum number of bytes to read
+     * @return the number of bytes read, which is less than <tt>len</tt> only
+     *     if the input is exhausted
+     */
+    public int read(byte[] a, int off, int len) {
+        int n = 0;
+        // drain the accumulator a byte at a time; unaligned input stays on this path
+        while (n < len && N > 0) {
+            if (N < 8) fillBuffer(8);
+            if (N < 8) return n;
+            a[off + n++] = (byte) take(8);
+        }
+        // byte-aligned with an empty accumulator: copy straight from the source
+        while (n < len && source != null) {
+            if (!source.hasRemaining() && !refill()) break;
+            int k = Math.min(len - n, source.remaining());
+            source.get(a, off + n, k);
+            n += k;
+        }
+        while (n < len && source == null) {
+            if (pos >= limit && len - n >= bytes.length / 2) {
+                // a read this large gains nothing from bytes[]: read straight into a
+                int k = readStream(a, off + n, len - n);
+                if (k <= 0) break;
+                n += k;
+                continue;
+            }
+            if (pos >= limit && !fillBytes()) break;
+            int k = Math.min(len - n, limit - pos);
+            System.arraycopy(bytes, pos, a, off + n, k);
+            pos += k;
+            n += k;
+        }
+        return n;
+    }
+
+   /**
+     * Read up to <tt>len</tt> bytes from the input into <tt>a[off..off+len)</tt>,
+     * waiting for the input only if no bytes are buffered, and then only for
+     * one read of the underlying stream or channel. Unlike <tt>read</tt>, it
+     * suits a pipe or socket, whose next bytes may not arrive for a long time.
+     * @param a the array receiving the bytes
+     * @param off the offset of the first byte
+     * @param len the maximum number of bytes to read
+     * @return the number of bytes read, which is 0 only if <tt>len</tt> is 0
+     *     or the input is exhausted
+     */
+    public int readAvailable(byte[] a, int off, int len) {
+        if (len == 0) return 0;
+        if (buffered() == 0) {
+            boolean more = (source != null) ? refill() : fillBytes();
+            if (!more) return 0;
+        }
+        return read(a, off, Math.min(len, buffered()));
+    }
+
+    // number of whole bytes that can be read without reading from the input
+    private int buffered() {
+        if (source != null) return N/8 + source.remaining();
+        return N/8 + Math.max(limit - pos, 0);
+    }
+
+   /**
+     * Read the next 64 bits from the input and return as a 64-bit long.
+     * @return the next 64 bits of data from the input as a <tt>long</tt>
+     * @throws RuntimeException if there are fewer than 64 bits available on the input
+     */
+    public long readLong() {
+        return readBits(64);
+    }
+
+
+   /**
+     * Read the next 64 bits from the input and return as a 64-bit double.
+     * @return the next 64 bits of data from the input as a <tt>double</tt>
+     * @throws RuntimeExceptionArgument if there are fewer than 64 bits available on the input
+     */
+    public double readDouble() {
+        return Double.longBitsToDouble(readLong());
+    }
+
+   /**
+     * Read the next 32 bits from the input and return as a 32-bit float.
+     * @return the next 32 bits of data from the input as a <tt>float</tt>
+     * @throws RuntimeException if there are fewer than 32 bits available on the input
+     */
+    public float readFloat() {
+        return Float.intBitsToFloat(readInt());
+    }
+
+
+   /**
+     * Read the next 8 bits from the input and return as an 8-bit byte.
+     * @return the next 8 bits of data from the input as a <tt>byte</tt>
+     * @throws RuntimeException if there are fewer than 8 bits available on the input
+     */
+    public byte readByte() {
+        return (byte) take(8);
+    }
+}
@@ -0,0 +1,356 @@
+/*************************************************************************
+ *  Compilation:  javac BitWriter.java
+ *
+ *  Write binary data to an output stream or channel, either one 1-bit
+ *  boolean, one r-bit value, one 8-bit char, one 32-bit int, one 64-bit
+ *  double, one 32-bit float, or one 64-bit long at a time.
+ *
+ *  The bytes written are not aligned.
+ *
+ *************************************************************************/
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ *  The <tt>BitWriter</tt> class converts primitive type variables
+ *  (<tt>boolean</tt>, <tt>byte</tt>, <tt>char</tt>, <tt>int</tt>, <tt>long</tt>,
+ *  <tt>float</tt>, and <tt>double</tt>) to sequences of bits and writes them
+ *  to an {@link OutputStream} or {@link WritableByteChannel}.
+ *  Uses big-endian (most-significant byte first).
+ *  <p>
+ *  A channel is written from a {@link ByteBuffer}, by default a direct one,
+ *  that the accumulator empties straight into, so a channel that does native
+ *  I/O writes it without the copy from a heap array that a stream needs.
+ *  Callers that pool buffers can supply their own.
+ *  <p>
+ *  Each instance keeps its own 64-bit accumulator and output buffer, so any
+ *  number of writers can be in use at once, one per thread.
+ *  The client must <tt>flush()</tt> or <tt>close()</tt> the writer when
+ *  finished writing bits. I/O errors are rethrown as
+ *  {@link UncheckedIOException}.
+ *  <p>
+ *  {@link BinaryStdOut} is a static adapter over a writer bound to standard output.
+ */
+public class BitWriter implements AutoCloseable {
+    private final OutputStream out;            // destination, or null if channel
+    private final WritableByteChannel channel; // destination, or null if stream
+
+    private long buffer;    // 64-bit accumulator; the low N bits are pending
+    private int N;          // number of bits pending in buffer
+
+    private final byte[] bytes;                   // whole bytes not yet written, or null if channel
+    private int pos;                              // number of bytes in bytes[]
+    private final ByteBuffer direct;              // whole bytes not yet written, or null if stream
+
+    /**
+     * Initializes a bit writer over the given output stream.
+     * @param out the output stream
+     * @throws NullPointerException if <tt>out</tt> is <tt>null</tt>
+     */
+    public BitWriter(OutputStream out) {
+        if (out == null) throw new NullPointerException();
+        this.out = out;
+        this.channel = null;
+        this.bytes = new byte[8192];
+        this.direct = null;
+    }
+
+    /**
+     * Initializes a bit writer over the given channel, written through a
+     * 64 KB direct buffer.
+     * @param channel the channel
+     * @throws NullPointerException if <tt>channel</tt> is <tt>null</tt>
+     */
+    public BitWriter(WritableByteChannel channel) {
+        this(channel, ByteBuffer.allocateDirect(1 << 16));
+    }
+
+    /**
+     * Initializes a bit writer over the given channel, written through the
+     * given buffer. The buffer's contents are overwritten, and it belongs to
+     * the writer until the writer is flushed for the last time, when it can
+     * go back to a pool. A direct buffer saves the channel a copy.
+     * @param channel the channel
+     * @param buffer the write buffer
+     * @throws NullPointerException if <tt>channel</tt> or <tt>buffer</tt> is <tt>null</tt>
+     * @throws IllegalArgumentException if <tt>buffer</tt> has no capacity
+     *     or is read-only
+     */
+    public BitWriter(WritableByteChannel channel, ByteBuffer buffer) {
+        if (channel == null || buffer == null) throw new NullPointerException();
+        if (buffer.capacity() == 0 || buffer.isReadOnly()) throw new IllegalArgumentException("Unusable write buffer");
+        this.out = null;
+        this.channel = channel;
+        this.bytes = null;
+        this.direct = buffer.clear();
+    }
+
+   /**
+     * Write the specified bit to the output.
+     */
+    private void writeBit(boolean bit) {
+        append(bit ? 1 : 0, 1);
+    } 
+
+   /**
+     * Write the 8-bit byte to the output.
+     */
+    private void writeByte(int x) {
+        assert x >= 0 && x < 256;
+        append(x, 8);
+    }
+
+    // add the r low-order bits of x to the accumulator, 1 <= r <= 56
+    private void append(long x, int r) {
+        if (N + r > 64) spill();
+        buffer = (buffer << r) | x;
+        N += r;
+    }
+
+    // move the whole bytes in the accumulator to bytes[] or direct, leaving N < 8
+    private void spill() {
+        if (direct != null) {
+            if (N >= 32 && direct.remaining() >= 4) {
+                N -= 32;
+                int x = (int) (buffer >>> N);
+                if (direct.order() == ByteOrder.LITTLE_ENDIAN) x = Integer.reverseBytes(x);
+                direct.putInt(x);
+            }
+            while (N >= 8) {
+                N -= 8;
+                if (!direct.hasRemaining()) drain();
+                direct.put((byte) (buffer >>> N));
+            }
+            return;
+        }
+        while (N >= 8) {
+            N -= 8;
+            if (pos == bytes.length) drain();
+            bytes[pos++] = (byte) (buffer >>> N);
+        }
+    }
+
+    // write bytes[] or direct to the output
+    private void drain() {
+        try {
+            if (direct == null) out.write(bytes, 0, pos);
+            else {
+                direct.flip();
+                while (direct.hasRemaining()) channel.write(direct);
+                direct.clear();
+            }
+        }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+        pos = 0;
+    }
+
+    // write out any remaining bits in buffer to the output, padding with 0s
+    private void clearBuffer() {
+        spill();
+        if (N > 0) append(0, 8 - N);
+        spill();
+        drain();
+        buffer = 0;
+    }
+
+   /**
+     * Flush the output, padding 0s if number of bits written so far
+     * is not a multiple of 8.
+     */
+    public void flush() {
+        clearBuffer();
+        try { if (out != null) out.flush(); }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+
+   /**
+     * Flush and close the output. Once the output is closed, you can no
+     * longer write bits to it.
+     */
+    public void close() {
+        flush();
+        try {
+            if (out != null) out.close();
+            else             channel.close();
+        }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+
+
+   /**
+     * Write the specified bit to the output.
+     * @param x the <tt>boolean</tt> to write.
+     */
+    public void write(boolean x) {
+        writeBit(x);
+    } 
+
+   /**
+     * Write the 8-bit byte to the output.
+     * @param x the <tt>byte</tt> to write.
+     */
+    public void write(byte x) {
+        writeByte(x & 0xff);
+    }
+
+   /**
+     * Write the 32-bit int to the output.
+     * @param x the <tt>int</tt> to write.
+     */
+    public void write(int x) {
+        append(x & 0xffffffffL, 32);
+    }
+
+   /**
+     * Write the r-bit int to the output.
+     * @param x the <tt>int</tt> to write.
+     * @param r the number of relevant bits in the char.
+     * @throws IllegalArgumentException if <tt>r</tt> is not between 1 and 32.
+     * @throws IllegalArgumentException if <tt>x</tt> is not between 0 and 2<sup>r</sup> - 1.
+     */
+    public void write(int x, int r) {
+        if (r == 32) { write(x); return; }
+        if (r < 1 || r > 32)        throw new IllegalArgumentException("Illegal value for r = " + r);
+        if (x < 0 || x >= (1 << r)) throw new IllegalArgumentException("Illegal " + r + "-bit char = " + x);
+        append(x, r);
+    }
+
+   /**
+     * Write the r-bit value to the output, most significant bit first.
+     * The bits go through a 64-bit accumulator that is emptied a whole byte
+     * at a time, so the cost does not depend on <tt>r</tt>.
+     * @param x the value to write.
+     * @param r the number of relevant bits in the value.
+     * @throws IllegalArgumentException if <tt>r</tt> is not between 1 and 64.
+     * @throws IllegalArgumentException if <tt>x</tt> is not between 0 and 2<sup>r</sup> - 1.
+     */
+    public void writeBits(long x, int r) {
+        if (r < 1 || r > 64)              throw new IllegalArgumentException("Illegal value for r = " + r);
+        if (r < 64 && (x >>> r) != 0)     throw new IllegalArgumentException("Illegal " + r + "-bit value = " + x);
+        if (r > 56) {
+            append(x >>> 32, r - 32);
+            append(x & 0xffffffffL, 32);
+        }
+        else append(x, r);
+    }
+
+   /**
+     * Write the 64-bit double to the output.
+     * @param x the <tt>double</tt> to write.
+     */
+    public void write(double x) {
+        write(Double.doubleToRawLongBits(x));
+    }
+
+   /**
+     * Write the 64-bit long to the output.
+     * @param x the <tt>long</tt> to write.
+     */
+    public void write(long x) {
+        append(x >>> 32, 32);
+        append(x & 0xffffffffL, 32);
+    }
+
+   /**
+     * Write the 32-bit float to the output.
+     * @param x the <tt>float</tt> to write.
+     */
+    public void write(float x) {
+        write(Float.floatToRawIntBits(x));
+    }
+
+   /**
+     * Write the 16-bit int to the output.
+     * @param x the <tt>short</tt> to write.
+     */
+    public void write(short x) {
+        append(x & 0xffff, 16);
+    }
+
+   /**
+     * Write the 8-bit char to the output.
+     * @param x the <tt>char</tt> to write.
+     * @throws IllegalArgumentException if <tt>x</tt> is not betwen 0 and 255.
+     */
+    public void write(char x) {
+        if (x < 0 || x >= 256) throw new IllegalArgumentException("Illegal 8-bit char = " + x);
+        writeByte(x);
+    }
+
+   /**
+     * Write the r-bit char to the output.
+     * @param x the <tt>char</tt> to write.
+     * @param r the number of relevant bits in the char.
+     * @throws IllegalArgumentException if <tt>r</tt> is not between 1 and 16.
+     * @throws IllegalArgumentException if <tt>x</tt> is not between 0 and 2<sup>r</sup> - 1.
+     */
+    public void write(char x, int r) {
+        if (r == 8) { write(x); return; }
+        if (r < 1 || r > 16)        throw new IllegalArgumentException("Illegal value for r = " + r);
+        if (x < 0 || x >= (1 << r)) throw new IllegalArgumentException("Illegal " + r + "-bit char = " + x);
+        append(x, r);
+    }
+
+   /**
+     * Write the string of 8-bit characters to the output.
+     * @param s the <tt>String</tt> to write.
+     * @throws IllegalArgumentException if any character in the string is not
+     * between 0 and 255.
+     */
+    public void write(String s) {
+        for (int i = 0; i < s.length(); i++)
+            write(s.charAt(i));
+    }
+
+   /**
+     * Write the bytes <tt>a[off..off+len)</tt> to the output.
+     * When the output is byte-aligned the bytes are copied in bulk.
+     * @param a the array holding the bytes
+     * @param off the offset of the first byte
+     * @param len the number of bytes to write
+     */
+    public void write(byte[] a, int off, int len) {
+        spill();
+        if (N == 0 && direct != null) {
+            while (len > 0) {
+                if (!direct.hasRemaining()) drain();
+                int k = Math.min(len, direct.remaining());
+                direct.put(a, off, k);
+                off += k;
+                len -= k;
+            }
+            return;
+        }
+        if (N == 0) {
+            if (len > bytes.length - pos) {
+                drain();
+                try { out.write(a, off, len); }
+                catch (IOException e) { throw new UncheckedIOException(e); }
+                return;
+            }
+            System.arraycopy(a, off, bytes, pos, len);
+            pos += len;
+            return;
+        }
+        for (int i = off; i < off + len; i++)
+            append(a[i] & 0xff, 8);
+    }
+
+   /**
+     * Write the String of r-bit characters to the output.
+     * @param s the <tt>String</tt> to write.
+     * @param r the number of relevants bits in each character.
+     * @throws IllegalArgumentException if r is not between 1 and 16.
+     * @throws IllegalArgumentException if any character in the string is not
+     * between 0 and 2<sup>r</sup> - 1.
+     */
+    public void write(String s, int r) {
+        for (int i = 0; i < s.length(); i++)
+            write(s.charAt(i), r);
+    }
+}
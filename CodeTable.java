@@ -0,0 +1,281 @@
+/*************************************************************************
+ *  Compilation:  javac CodeTable.java
+ *
+ *  LZW encoder dictionary mapping (prefix code, next byte) to the code
+ *  of the extended phrase, implemented with linear-probing open
+ *  addressing over a flat off-heap array of packed slots.
+ *
+ *************************************************************************/
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ *  The <tt>CodeTable</tt> class represents the dictionary of an LZW encoder.
+ *  Every phrase in an LZW dictionary is some shorter phrase extended by one
+ *  byte, so a phrase is identified by the pair (<em>prefix code</em>, <em>byte</em>)
+ *  and the single-byte phrases 0 to 255 are implicit.
+ *  It supports <em>get</em>, <em>put</em>, <em>remove</em>, <em>size</em> and <em>clear</em>,
+ *  and <em>seed</em> for the phrases of an {@link LzwDictionary}, which
+ *  <em>clear</em> keeps.
+ *  Codes are at most 24 bits.
+ *  <p>
+ *  This implementation uses a linear-probing hash table, kept at most half
+ *  full, whose slots are 64-bit words packing an 8-bit generation tag, the
+ *  32-bit (prefix, byte) key and the 24-bit code. The slots live in a direct
+ *  {@link ByteBuffer}, outside the Java heap, so even a 2<sup>24</sup>-phrase
+ *  table adds nothing for the garbage collector to scan or copy, and nothing
+ *  is allocated per phrase. <em>clear</em> just starts a new generation, so
+ *  emptying a full table takes constant time, except that the slots are
+ *  zeroed once every 254 generations when the tag wraps around. Seeded
+ *  phrases carry the reserved tag 255, which every generation treats as
+ *  live; they are added before any other phrase, so their probe sequences
+ *  only cross other seeded slots and stay intact when the rest are cleared.
+ *  A table of seeded phrases can be written out with <em>write</em> and
+ *  used again straight from the bytes, for example from a memory-mapped
+ *  {@link LzwDictionary} snapshot shared by many processes.
+ */
+public class CodeTable {
+    private static final int MAX_BITS = 24;                // widest code
+    private static final long CODE_MASK = (1L << 24) - 1;  // low 24 bits of a slot
+    private static final int MAX_GENERATION = 254;         // widest tag of a generation
+    private static final long SEEDED = 255;                // tag of seeded slots, live in every generation
+
+    private final ByteBuffer slots; // slot i = tag << 56 | prefix << 32 | byte << 24 | code
+    private final int mask;         // number of slots - 1
+    private final int shift;        // 32 - lg(number of slots)
+    private long generation = 1;    // tag of live slots; 0 is never live
+    private int N;                  // number of phrases in the table
+    private int seeded;             // number of them that are seeded
+
+    /**
+     * Initializes an empty table able to hold the given number of phrases.
+     * @param maxCodes the maximum number of phrases
+     * @throws IllegalArgumentException unless 1 &le; <tt>maxCodes</tt> &le; 2<sup>24</sup>
+     */
+    public CodeTable(int maxCodes) {
+        if (maxCodes < 1 || maxCodes > 1 << MAX_BITS)
+            throw new IllegalArgumentException("maxCodes must be between 1 and 2^" + MAX_BITS);
+        int m = Integer.highestOneBit(2*maxCodes - 1) << 1;     // load factor <= 1/2
+        slots = ByteBuffer.allocateDirect(8 * m).order(ByteOrder.nativeOrder());
+        mask  = m - 1;
+        shift = 32 - Integer.numberOfTrailingZeros(m);
+    }
+
+    /**
+     * Initializes a table of seeded phrases that reads the given slots in
+     * place, such as slots written by <em>write</em> and mapped from a file.
+     * The table must not be changed.
+     * @param slots the slots, 8 bytes each in the buffer's byte order
+     * @param seeded the number of phrases in the slots
+     * @throws IllegalArgumentException unless the number of slots is a power
+     *     of two of at least 2 * <tt>seeded</tt>, and at most 2<sup>25</sup>
+     */
+    CodeTable(ByteBuffer slots, int seeded) {
+        int m = slots.capacity() / 8;
+        if (Integer.bitCount(m) != 1 || m > 2 << MAX_BITS || 2L*seeded > m || seeded < 0)
+            throw new IllegalArgumentException("Illegal CodeTable of " + m + " slots");
+        this.slots = slots;
+        mask  = m - 1;
+        shift = 32 - Integer.numberOfTrailingZeros(m);
+        this.seeded = seeded;
+        N = seeded;
+    }
+
+    /**
+     * Returns the number of phrases in this table.
+     * @return the number of phrases in this table
+     */
+    public int size() {
+        return N;
+    }
+
+    // is the slot a phrase of the current generation or a seeded one?
+    private boolean live(long slot) {
+        long tag = slot >>> 56;
+        return tag == generation || tag == SEEDED;
+    }
+
+    // Fibonacci hash of a (prefix, byte) key into [0, number of slots)
+    private int hash(int key) {
+        return (key * 0x9E3779B1) >>> shift;
+    }
+
+    /**
+     * Returns the code of the phrase <tt>prefix</tt> extended by <tt>b</tt>.
+     * @param prefix the code of the prefix phrase
+     * @param b the extending byte
+     * @return the code of the extended phrase, or -1 if it is not in the table
+     */
+    public int get(int prefix, int b) {
+        int key = (prefix << 8) | b;
+        for (int i = hash(key); ; i = (i + 1) & mask) {
+            long slot = slots.getLong(i << 3);
+            if (!live(slot)) return -1;
+            if ((int) (slot >>> 24) == key) return (int) (slot & CODE_MASK);
+        }
+    }
+
+    /**
+     * Adds the phrase <tt>prefix</tt> extended by <tt>b</tt> with the given code.
+     * The phrase must not already be in the table.
+     * @param prefix the code of the prefix phrase
+     * @param b the extending byte
+     * @param code the code of the extended phrase
+     * @throws IllegalStateException if the table is full
+     */
+    public void put(int prefix, int b, int code) {
+        insert(prefix, b, code, generation);
+    }
+
+    /**
+     * Adds the phrase <tt>prefix</tt> extended by <tt>b</tt> with the given code,
+     * to be kept by <em>clear</em>. The phrase must not already be in the table.
+     * @param prefix the code of the prefix phrase
+     * @param b the extending byte
+     * @param code the code of the extended phrase
+     * @throws IllegalStateException if the table is full or holds phrases
+     *     that are not seeded
+     */
+    public void seed(int prefix, int b, int code) {
+        if (N != seeded) throw new IllegalStateException("CodeTable has phrases that are not seeded");
+        insert(prefix, b, code, SEEDED);
+        seeded++;
+    }
+
+    // add a phrase with the given tag in the first free slot of its probe sequence
+    private void insert(int prefix, int b, int code, long tag) {
+        if (2*(N+1) > mask + 1) throw new IllegalStateException("CodeTable is full");
+        int key = (prefix << 8) | b;
+        int i = hash(key);
+        while (live(slots.getLong(i << 3))) i = (i + 1) & mask;
+        slots.putLong(i << 3, (tag << 56) | ((key & 0xffffffffL) << 24) | code);
+        N++;
+    }
+
+    /**
+     * Removes the phrase <tt>prefix</tt> extended by <tt>b</tt>, if it is in
+     * the table and not seeded.
+     * @param prefix the code of the prefix phrase
+     * @param b the extending byte
+     */
+    public void remove(int prefix, int b) {
+        int key = (prefix << 8) | b;
+        long tagged = (generation << 56) | ((key & 0xffffffffL) << 24);
+        int i = hash(key);
+        for (long slot; ((slot = slots.getLong(i << 3)) & ~CODE_MASK) != tagged; i = (i + 1) & mask)
+            if (!live(slot)) return;
+
+        // shift back each later slot of the cluster whose probe sequence passes
+        // the hole; a seeded slot's never does, so seeded slots stay put
+        for (int j = (i + 1) & mask; ; j = (j + 1) & mask) {
+            long slot = slots.getLong(j << 3);
+            if (!live(slot)) break;
+            int home = hash((int) (slot >>> 24));
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                slots.putLong(i << 3, slot);
+                i = j;
+            }
+        }
+        slots.putLong(i << 3, 0);
+        N--;
+    }
+
+    /**
+     * Returns the number of slots, which is a power of two.
+     * @return the number of slots
+     */
+    int length() {
+        return mask + 1;
+    }
+
+    /**
+     * Writes the slots of this table, which must only hold seeded phrases,
+     * to the output as 64-bit big-endian words.
+     * @param out the output
+     * @throws IllegalStateException if the table holds phrases that are not seeded
+     */
+    void write(BitWriter out) {
+        if (N != seeded) throw new IllegalStateException("CodeTable has phrases that are not seeded");
+        for (int i = 0; i <= mask; i++) {
+            long slot = slots.getLong(i << 3);
+            out.writeBits((slot >>> 56) == SEEDED ? slot : 0, 64);
+        }
+    }
+
+    /**
+     * Removes all phrases from this table except the seeded ones.
+     */
+    public void clear() {
+        if (++generation > MAX_GENERATION) {
+            for (int i = 0; i <= mask; i++)
+                if ((slots.getLong(i << 3) >>> 56) != SEEDED) slots.putLong(i << 3, 0);
+            generation = 1;
+        }
+        N = seeded;
+    }
+
+    /**
+     * Unit tests the <tt>CodeTable</tt> data type: adds and removes keys
+     * whose home slots are the last few of a small table, so they crowd into
+     * one cluster that wraps around the end, and checks <em>get</em> for
+     * every key after each step against a {@link HashMap}. Seeded phrases
+     * must survive every <em>remove</em> and <em>clear</em>, through enough
+     * clears for the generation tag to wrap around.
+     */
+    public static void main(String[] args) {
+        int R = 256;                        // prefix of the seeded phrases
+        CodeTable table = new CodeTable(256);
+        HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        for (int b = 0; b < 8; b++) {
+            table.seed(R, b, R + 1 + b);
+            expected.put((R << 8) | b, R + 1 + b);
+        }
+
+        // keys whose home is one of the last four slots
+        ArrayList<Integer> keys = new ArrayList<Integer>();
+        for (int key = (R + 1) << 8; keys.size() < 150; key++)
+            if (((table.hash(key) - (table.mask - 3)) & table.mask) < 4) keys.add(key);
+
+        Random random = new Random(1);
+        int code = 2 * R;
+        int clears = 0;
+        for (int step = 0; step < 100000; step++) {
+            int key = keys.get(random.nextInt(keys.size()));
+            int op = random.nextInt(100);
+            if (op < 1) {
+                table.clear();
+                expected.keySet().removeIf(k -> k >>> 8 != R);
+                clears++;
+            }
+            else if (op < 50 && !expected.containsKey(key) && table.size() < 200) {
+                table.put(key >>> 8, key & 0xff, code);
+                expected.put(key, code);
+                code = (code + 1) & (int) CODE_MASK;
+            }
+            else if (op < 95) {
+                table.remove(key >>> 8, key & 0xff);
+                expected.remove(key);
+            }
+            else table.remove(R, random.nextInt(8));    // seeded, so kept
+
+            if (table.size() != expected.size())
+                throw new RuntimeException("size " + table.size() + " at step " + step + ", expected " + expected.size());
+            for (int k : keys) check(table, k, expected, step);
+            for (int b = 0; b < 8; b++) check(table, (R << 8) | b, expected, step);
+        }
+        StdOut.println("remove and get ok: " + keys.size() + " colliding keys, " + clears + " clears");
+    }
+
+    // throw unless get(key) is the code expected for key, or -1 if none
+    private static void check(CodeTable table, int key, HashMap<Integer, Integer> expected, int step) {
+        int code = table.get(key >>> 8, key & 0xff);
+        Integer want = expected.get(key);
+        if (code != (want == null ? -1 : want))
+            throw new RuntimeException("get(" + (key >>> 8) + ", " + (key & 0xff) + ") = " + code
+                                       + " at step " + step + ", expected " + want);
+    }
+}
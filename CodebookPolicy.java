@@ -0,0 +1,199 @@
+/*************************************************************************
+ *  Compilation:  javac CodebookPolicy.java
+ *
+ *  What an LZW encoder and decoder do once the codebook is full.
+ *
+ *************************************************************************/
+
+/**
+ *  The <tt>CodebookPolicy</tt> interface decides when an {@link LzwEncoder}
+ *  or {@link LzwDecoder} clears a codebook that is full at the maximum
+ *  codeword width, and whether it recycles codewords of the full codebook.
+ *  Once the codebook is full, the coder calls <em>full</em> after every
+ *  codeword with the number of uncompressed and compressed bits coded so
+ *  far, and clears the codebook if it returns <tt>true</tt>.
+ *  The encoder and decoder make exactly the same calls, so a stream expands
+ *  correctly whenever both sides use equal policies.
+ *  <p>
+ *  A policy may keep state between calls, so each encoder and decoder needs
+ *  its own instance; <em>clear</em> is called whenever the coder's codebook
+ *  is cleared, including at the start of every stream. The built-in policies
+ *  are named by the one-character reset modes recorded in a stream's header:
+ *  <ul>
+ *  <li><tt>'n'</tt>: {@link #NONE}, keep using the full codebook
+ *  <li><tt>'r'</tt>: {@link #RESET}, clear the codebook as soon as it fills
+ *  <li><tt>'m'</tt>: {@link Monitor}, clear it once the compression ratio of
+ *      the whole stream has fallen by more than a factor of 1.1 since the
+ *      codebook filled
+ *  <li><tt>'w'</tt>: {@link Window}, clear it once the ratio over the last
+ *      8192 codewords, checked every 256 codewords, has fallen by more than
+ *      a factor of 1.1 from the first such window after the codebook filled
+ *  <li><tt>'l'</tt>: {@link #RECYCLE}, never clear the codebook but give each
+ *      new phrase the codeword of the least recently used leaf phrase, see {@link LeafLru}
+ *  </ul>
+ *  A user-supplied policy is not recorded in the header; the caller must give
+ *  an equal one to the decoder.
+ */
+public interface CodebookPolicy {
+    /**
+     * Decides whether to clear the full codebook after a codeword.
+     * @param uncomp bits of uncompressed data coded so far in the stream
+     * @param comp bits of codewords coded so far in the stream
+     * @return <tt>true</tt> to clear the codebook
+     */
+    boolean full(long uncomp, long comp);
+
+    /**
+     * Forgets any state about the codebook, which has just been cleared.
+     */
+    default void clear() { }
+
+    /**
+     * Does the coder keep adding phrases to the full codebook, each taking the
+     * codeword of the least recently used phrase that no other phrase extends?
+     * @return <tt>true</tt> to recycle codewords; <tt>false</tt> by default
+     */
+    default boolean recycles() { return false; }
+
+    /**
+     * Keeps using the full codebook. Stateless, so it may be shared.
+     */
+    CodebookPolicy NONE = new CodebookPolicy() {
+        public boolean full(long uncomp, long comp) { return false; }
+        public String toString() { return "n"; }
+    };
+
+    /**
+     * Clears the codebook as soon as it fills. Stateless, so it may be shared.
+     */
+    CodebookPolicy RESET = new CodebookPolicy() {
+        public boolean full(long uncomp, long comp) { return true; }
+        public String toString() { return "r"; }
+    };
+
+    /**
+     * Never clears the codebook, recycling the codewords of least recently
+     * used leaf phrases instead. Stateless, so it may be shared.
+     */
+    CodebookPolicy RECYCLE = new CodebookPolicy() {
+        public boolean full(long uncomp, long comp) { return false; }
+        public boolean recycles() { return true; }
+        public String toString() { return "l"; }
+    };
+
+    /**
+     * Returns a new instance of the built-in policy for the given reset mode.
+     * @param mode the reset mode, one of <tt>'n'</tt>, <tt>'r'</tt>, <tt>'m'</tt>, <tt>'w'</tt> or <tt>'l'</tt>
+     * @return the policy for <tt>mode</tt>
+     * @throws IllegalArgumentException if <tt>mode</tt> is not a reset mode
+     */
+    static CodebookPolicy forMode(char mode) {
+        switch (mode) {
+            case 'n': return NONE;
+            case 'r': return RESET;
+            case 'm': return new Monitor(1.1);
+            case 'w': return new Window(8192, 256, 1.1);
+            case 'l': return RECYCLE;
+            default:  throw new IllegalArgumentException("Illegal reset mode " + mode);
+        }
+    }
+
+    /**
+     * Clears the codebook once the compression ratio of the whole stream has
+     * fallen by more than a threshold factor since the codebook filled.
+     */
+    final class Monitor implements CodebookPolicy {
+        private final double threshold;     // factor the ratio must fall by
+        private double oldRatio;            // ratio when the codebook filled, or 0 if not monitoring
+
+        /**
+         * Initializes the policy.
+         * @param threshold the factor the ratio must fall by
+         * @throws IllegalArgumentException unless <tt>threshold</tt> &gt; 1
+         */
+        public Monitor(double threshold) {
+            if (!(threshold > 1)) throw new IllegalArgumentException("Illegal threshold " + threshold);
+            this.threshold = threshold;
+        }
+
+        public boolean full(long uncomp, long comp) {
+            double ratio = (double) uncomp / comp;
+            if (oldRatio == 0) oldRatio = ratio;
+            else if (oldRatio / ratio > threshold) return true;
+            return false;
+        }
+
+        public void clear() {
+            oldRatio = 0;
+        }
+
+        public String toString() {
+            return "m(" + threshold + ")";
+        }
+    }
+
+    /**
+     * Clears the codebook once the compression ratio over the last
+     * <em>codewords</em> codewords has fallen by more than a threshold factor
+     * from the ratio over the first such window after the codebook filled.
+     * The ratio is only computed every <em>interval</em> codewords, from
+     * snapshots of the bit counts kept in a ring, so each other codeword
+     * costs one counter update.
+     */
+    final class Window implements CodebookPolicy {
+        private final int interval;         // codewords between checks
+        private final double threshold;     // factor the ratio must fall by
+        private final long[] uncomps;       // uncomp at each of the last checks
+        private final long[] comps;         // comp at each of the last checks
+        private int calls;                  // calls since the last check
+        private int next;                   // ring slot of the oldest snapshot
+        private boolean primed;             // does the ring cover a whole window?
+        private double baseline;            // ratio over the first whole window, or 0
+
+        /**
+         * Initializes the policy.
+         * @param codewords the length of the window, in codewords
+         * @param interval the number of codewords between checks
+         * @param threshold the factor the ratio must fall by
+         * @throws IllegalArgumentException unless 1 &le; <tt>interval</tt> &le;
+         *     <tt>codewords</tt> and <tt>threshold</tt> &gt; 1
+         */
+        public Window(int codewords, int interval, double threshold) {
+            if (interval < 1 || interval > codewords)
+                throw new IllegalArgumentException("Illegal window " + codewords + " every " + interval);
+            if (!(threshold > 1)) throw new IllegalArgumentException("Illegal threshold " + threshold);
+            this.interval = interval;
+            this.threshold = threshold;
+            uncomps = new long[codewords / interval];
+            comps = new long[codewords / interval];
+        }
+
+        public boolean full(long uncomp, long comp) {
+            if (++calls < interval) return false;
+            calls = 0;
+            if (primed) {
+                double ratio = (double) (uncomp - uncomps[next]) / (comp - comps[next]);
+                if (baseline == 0) baseline = ratio;
+                else if (baseline / ratio > threshold) return true;
+            }
+            uncomps[next] = uncomp;
+            comps[next] = comp;
+            if (++next == uncomps.length) {
+                next = 0;
+                primed = true;
+            }
+            return false;
+        }
+
+        public void clear() {
+            calls = 0;
+            next = 0;
+            primed = false;
+            baseline = 0;
+        }
+
+        public String toString() {
+            return "w(" + uncomps.length * interval + "/" + interval + ", " + threshold + ")";
+        }
+    }
+}
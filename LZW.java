@@ -2,7 +2,7 @@
  *  Compilation:  javac LZW.java
  *  Execution:    java LZW - < input.txt   (compress)
  *  Execution:    java LZW + < input.txt   (expand)
- *  Dependencies: BinaryIn.java BinaryOut.java
+ *  Dependencies: BitReader.java BitWriter.java LookaheadBuffer.java TST.java
  *
  *  Compress or expand binary input from standard input using LZW.
  *
@@ -21,50 +21,81 @@ public class LZW {
     private static final int L = 4096;       // number of codewords = 2^W
     private static final int W = 12;         // codeword width
 
-    public static void compress() { 
-        String input = BinaryStdIn.readString();
+    public static void compress() {
+        compress(new BitReader(System.in), new BitWriter(System.out));
+    }
+
+    /**
+     * Compresses the bytes of <tt>in</tt> to <tt>out</tt>, then closes <tt>out</tt>.
+     * @param in the uncompressed input
+     * @param out the compressed output
+     */
+    public static void compress(BitReader in, BitWriter out) { 
+        LookaheadBuffer input = new LookaheadBuffer(in);
         TST<Integer> st = new TST<Integer>();
-        for (int i = 0; i < R; i++)
-            st.put("" + (char) i, i);
+        byte[] b = new byte[1];
+        for (int i = 0; i < R; i++) {
+            b[0] = (byte) i;
+            st.put(b, 0, 1, i);
+        }
         int code = R+1;  // R is codeword for EOF
-        while (input.length() > 0) {
-            String s = st.longestPrefixOf(input);  // Find max prefix match s.
-            BinaryStdOut.write(st.get(s), W);      // Print s's encoding.
-            int t = s.length();
+        int lookahead = 2;  // longest key in st, plus the char that extends it
+        TST.Match<Integer> match = new TST.Match<Integer>();
+        while (input.fill(lookahead) > 0) {
+            int t = st.longestPrefixOf(input.array(), input.offset(),     // Find max prefix match s.
+                                       input.offset() + input.length(), match);
+            out.write(match.value(), W);                  // Print s's encoding.
             if (t < input.length() && code < L)    // Add s to symbol table.
             {
-                st.put(input.substring(0, t + 1), code++);
+                st.insertChild(match, (char) input.byteAt(t), code++);
             }
-            input = input.substring(t);            // Scan past s in input.
+            if (t + 2 > lookahead) lookahead = t + 2;
+            input.skip(t);                         // Scan past s in input.
         }
-        BinaryStdOut.write(R, W);
-        BinaryStdOut.close();
+        out.write(R, W);
+        out.close();
     } 
 
 
     public static void expand() {
-        String[] st = new String[L];
+        expand(new BitReader(System.in), new BitWriter(System.out));
+    }
+
+    /**
+     * Expands the codewords of <tt>in</tt> to <tt>out</tt>, then closes <tt>out</tt>.
+     * @param in the compressed input
+     * @param out the uncompressed output
+     */
+    public static void expand(BitReader in, BitWriter out) {
+        byte[][] st = new byte[L][];
         int i; // next available codeword value
 
-        // initialize symbol table with all 1-character strings
+        // initialize symbol table with all 1-byte phrases
         for (i = 0; i < R; i++)
-            st[i] = "" + (char) i;
-        st[i++] = "";                        // (unused) lookahead for EOF
+            st[i] = new byte[] { (byte) i };
+        st[i++] = new byte[0];               // (unused) lookahead for EOF
 
-        int codeword = BinaryStdIn.readInt(W);
-        if (codeword == R) return;           // expanded message is empty string
-        String val = st[codeword];
+        int codeword = in.readInt(W);
+        if (codeword == R) { out.close(); return; } // expanded message is empty string
+        byte[] val = st[codeword];
 
         while (true) {
-            BinaryStdOut.write(val);
-            codeword = BinaryStdIn.readInt(W);
+            out.write(val, 0, val.length);
+            codeword = in.readInt(W);
             if (codeword == R) break;
-            String s = st[codeword];
-            if (i == codeword) s = val + val.charAt(0);   // special case hack
-            if (i < L) st[i++] = val + s.charAt(0);
+            byte[] s = st[codeword];
+            if (i == codeword) s = extend(val, val[0]);   // special case hack
+            if (i < L) st[i++] = extend(val, s[0]);
             val = s;
         }
-        BinaryStdOut.close();
+        out.close();
+    }
+
+    // a copy of the phrase a followed by the byte b
+    private static byte[] extend(byte[] a, byte b) {
+        byte[] s = java.util.Arrays.copyOf(a, a.length + 1);
+        s[a.length] = b;
+        return s;
     }
 
 
@@ -0,0 +1,219 @@
+/*************************************************************************
+ *  Compilation:  javac LeafLru.java
+ *  Dependencies: MyLZW.java LzwDictionary.java
+ *
+ *  Least-recently-used order of the leaf codewords of an LZW codebook,
+ *  for recycling codewords once the codebook is full.
+ *
+ *************************************************************************/
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ *  The <tt>LeafLru</tt> class tracks which multi-byte codewords of an LZW
+ *  codebook are <em>leaves</em>, phrases that no other phrase extends, and
+ *  keeps the leaves in least-recently-used order. Only a leaf can be
+ *  dropped from a codebook without breaking the phrases built on it, so
+ *  once the codebook is full the least recently used leaf is the one whose
+ *  codeword is recycled for the next phrase.
+ *  <p>
+ *  The encoder and decoder make the same calls in the same order:
+ *  <em>used</em> for each codeword coded, then <em>victim</em> and
+ *  <em>evict</em> if there is no free codeword, then <em>added</em> for
+ *  the new phrase. Every operation takes constant time: the leaves form a
+ *  doubly linked list threaded through arrays indexed by codeword, and
+ *  each codeword keeps a count of the phrases that extend it.
+ *  Codewords below a given first codeword, the single bytes, EOF and any
+ *  {@link LzwDictionary} phrases, are never recycled.
+ */
+public class LeafLru {
+    private static final int NIL = -1;      // end of list
+
+    private final int first;                // smallest codeword that can be recycled
+    private final int[] key;                // key[c] = prefix of phrase c << 8 | its last byte
+    private final int[] children;           // children[c] = number of phrases extending c
+    private final int[] prev;               // prev[c] = next older leaf, or NIL
+    private final int[] next;               // next[c] = next newer leaf, or NIL
+    private int oldest = NIL;               // least recently used leaf
+    private int newest = NIL;               // most recently used leaf
+
+    /**
+     * Initializes an empty order for codewords from <tt>first</tt> to
+     * <tt>maxCodes</tt> - 1.
+     * @param first the smallest codeword that can be recycled
+     * @param maxCodes one more than the largest codeword
+     */
+    public LeafLru(int first, int maxCodes) {
+        this.first = first;
+        key = new int[maxCodes];
+        children = new int[maxCodes];
+        prev = new int[maxCodes];
+        next = new int[maxCodes];
+    }
+
+    /**
+     * Forgets all phrases.
+     */
+    public void clear() {
+        java.util.Arrays.fill(children, 0);
+        oldest = NIL;
+        newest = NIL;
+    }
+
+    /**
+     * Returns the prefix codeword of phrase <tt>c</tt>.
+     * @param c a codeword added with <tt>added</tt>
+     * @return the codeword of phrase <tt>c</tt> minus its last byte
+     */
+    public int prefix(int c) {
+        return key[c] >>> 8;
+    }
+
+    /**
+     * Returns the last byte of phrase <tt>c</tt>.
+     * @param c a codeword added with <tt>added</tt>
+     * @return the last byte of phrase <tt>c</tt>
+     */
+    public int suffix(int c) {
+        return key[c] & 0xff;
+    }
+
+    /**
+     * Records that codeword <tt>c</tt> was just coded, making it the most
+     * recently used leaf if it is a leaf.
+     * @param c the codeword
+     */
+    public void used(int c) {
+        if (c >= first && children[c] == 0 && c != newest) {
+            unlink(c);
+            append(c);
+        }
+    }
+
+    /**
+     * Returns the least recently used leaf, whose codeword is the next to be
+     * recycled, or -1 if there are none.
+     * @return the least recently used leaf, or -1
+     */
+    public int victim() {
+        return oldest;
+    }
+
+    /**
+     * Drops leaf <tt>c</tt>. Its prefix becomes the most recently used leaf
+     * if no other phrase extends it.
+     * @param c the leaf
+     */
+    public void evict(int c) {
+        unlink(c);
+        int p = prefix(c);
+        if (p >= first && --children[p] == 0) append(p);
+    }
+
+    /**
+     * Records the new phrase <tt>c</tt>, <tt>prefix</tt> extended by byte
+     * <tt>b</tt>, as the most recently used leaf. Codewords below the first
+     * that can be recycled are ignored.
+     * @param c the codeword of the new phrase
+     * @param prefix the codeword of the phrase it extends
+     * @param b its last byte
+     */
+    public void added(int c, int prefix, int b) {
+        if (c < first) return;
+        key[c] = (prefix << 8) | b;
+        children[c] = 0;
+        append(c);
+        if (prefix >= first && children[prefix]++ == 0) unlink(prefix);
+    }
+
+    // add leaf c as the newest
+    private void append(int c) {
+        prev[c] = newest;
+        next[c] = NIL;
+        if (newest == NIL) oldest = c;
+        else               next[newest] = c;
+        newest = c;
+    }
+
+    // remove leaf c from the list
+    private void unlink(int c) {
+        if (prev[c] == NIL) oldest = next[c];
+        else                next[prev[c]] = next[c];
+        if (next[c] == NIL) newest = prev[c];
+        else                prev[next[c]] = prev[c];
+    }
+
+    /**
+     * Unit tests the <tt>LeafLru</tt> data type: checks the order of
+     * leaves through a few adds, uses and evictions, then round-trips text
+     * in the <tt>'l'</tt> reset mode with codewords narrow enough that the
+     * codebook fills early and most phrases take recycled codewords, with
+     * and without blocks, and with a dictionary whose codewords must never
+     * be recycled.
+     */
+    public static void main(String[] args) {
+        // 300 and 301 extend 'a', 302 extends 300
+        LeafLru lru = new LeafLru(257, 512);
+        lru.added(300, 'a', 'b');
+        lru.added(301, 'a', 'c');
+        lru.added(302, 300, 'd');
+        expect(lru.victim() == 301, "301 is the only leaf older than 302");
+        lru.used(301);
+        expect(lru.victim() == 302, "using 301 makes 302 the oldest leaf");
+        lru.evict(302);
+        expect(lru.victim() == 301 && lru.prefix(302) == 300 && lru.suffix(302) == 'd',
+               "evicting 302 makes its prefix 300 the newest leaf");
+        lru.evict(301);
+        lru.evict(300);
+        expect(lru.victim() == -1, "no leaves are left");
+        StdOut.println("leaf order ok");
+
+        // text of random words, so that phrases grow long before they are recycled
+        String[] words = { "the ", "codebook ", "is ", "full ", "least ", "recently ",
+                           "used ", "leaf ", "phrase ", "recycles ", "a ", "codeword. " };
+        Random random = new Random(1);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 1 << 18) {
+            text.append(words[random.nextInt(words.length)]);
+            if (random.nextInt(64) == 0) text.append(random.nextInt(1000000));
+        }
+        byte[] data = text.toString().getBytes(StandardCharsets.ISO_8859_1);
+        LzwDictionary dictionary = LzwDictionary.train(new BitReader(new ByteArrayInputStream(data)), 200);
+
+        for (LzwDictionary d : new LzwDictionary[] { null, dictionary }) {
+            for (int blockSize : new int[] { 0, 1 << 16 }) {
+                LzwHeader header = new LzwHeader('l', 9, 10, LzwHeader.CHECKSUM_CRC32, blockSize, d);
+                byte[] compressed = compress(header, data);
+                ByteArrayOutputStream expanded = new ByteArrayOutputStream();
+                MyLZW.expand(new BitReader(new ByteArrayInputStream(compressed)), new BitWriter(expanded), d);
+                String name = "block size " + blockSize + ((d == null) ? "" : ", dictionary");
+                expect(Arrays.equals(data, expanded.toByteArray()), "round trip: " + name);
+
+                // once the codebook is full, recycling must change the codewords
+                LzwHeader never = new LzwHeader('n', 9, 10, LzwHeader.CHECKSUM_CRC32, blockSize, d);
+                byte[] plain = compress(never, data);
+                expect(!Arrays.equals(Arrays.copyOfRange(compressed, header.size(), compressed.length),
+                                      Arrays.copyOfRange(plain, never.size(), plain.length)),
+                       "codewords recycled: " + name);
+                StdOut.println("round trip ok: " + name + ", " + compressed.length + " bytes, "
+                               + plain.length + " without recycling");
+            }
+        }
+    }
+
+    // compress data as the header describes, with the hashed dictionary recycling needs
+    private static byte[] compress(LzwHeader header, byte[] data) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        MyLZW.compress(header, true, new BitReader(new ByteArrayInputStream(data)), new BitWriter(compressed));
+        return compressed.toByteArray();
+    }
+
+    // throw unless the condition holds
+    private static void expect(boolean condition, String what) {
+        if (!condition) throw new RuntimeException("Failed: " + what);
+    }
+}
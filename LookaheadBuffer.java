@@ -0,0 +1,152 @@
+/*************************************************************************
+ *  Compilation:  javac LookaheadBuffer.java
+ *  Dependencies: BitReader.java
+ *
+ *  A bounded, refillable window of bytes read from a
+ *  BitReader. Used by the LZW compressors so that only the lookahead needed
+ *  to finish the current longest-prefix match is ever held in memory.
+ *
+ *************************************************************************/
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ *  The <tt>LookaheadBuffer</tt> class represents a sliding window over
+ *  the bytes of a {@link BitReader}. The bytes currently in the window are
+ *  exposed by <em>byteAt</em>, or in place by <em>array</em> and
+ *  <em>offset</em>, and also as a {@link CharSequence} of 8-bit characters,
+ *  whose index 0 is the next unread byte. The window holds one byte per
+ *  input byte and is refilled with bulk reads.
+ *  <p>
+ *  The client calls <tt>fill(n)</tt> to make sure at least <tt>n</tt>
+ *  bytes are buffered (fewer only when the input is exhausted)
+ *  and <tt>skip(t)</tt> to consume bytes from the front of the window.
+ *  The backing array is compacted on refill and only grows when a single
+ *  <tt>fill</tt> asks for more bytes than it can hold, so memory use
+ *  is bounded by the largest lookahead ever requested rather than by the
+ *  size of the input.
+ */
+public class LookaheadBuffer implements CharSequence {
+    private static final int DEFAULT_CAPACITY = 8192;
+
+    private final BitReader in; // source of bytes
+    private byte[] buf;         // backing array
+    private int lo;             // index of first buffered byte
+    private int hi;             // one past index of last buffered byte
+
+    /**
+     * Initializes an empty window over the given reader with the default capacity.
+     * @param in the reader
+     */
+    public LookaheadBuffer(BitReader in) {
+        this(in, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Initializes an empty window over the given reader with the given initial capacity.
+     * @param in the reader
+     * @param capacity the initial capacity
+     * @throws IllegalArgumentException unless <tt>capacity</tt> &ge; 1
+     */
+    public LookaheadBuffer(BitReader in, int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be >= 1");
+        this.in = in;
+        buf = new byte[capacity];
+    }
+
+    /**
+     * Makes sure at least <tt>n</tt> bytes are buffered, reading from
+     * the input as needed.
+     * @param n the number of bytes wanted
+     * @return the number of bytes buffered, which is less than <tt>n</tt>
+     *     only if the input is exhausted
+     */
+    public int fill(int n) {
+        if (hi - lo >= n) return hi - lo;
+        if (n > buf.length) resize(Math.max(n, 2*buf.length));
+        else if (lo > 0)    resize(buf.length);
+        hi += in.read(buf, hi, buf.length - hi);
+        return hi - lo;
+    }
+
+    /**
+     * Consumes the first <tt>n</tt> bytes of the window.
+     * @param n the number of bytes to consume
+     * @throws IndexOutOfBoundsException if fewer than <tt>n</tt> bytes are buffered
+     */
+    public void skip(int n) {
+        if (n < 0 || n > hi - lo) throw new IndexOutOfBoundsException("skip " + n);
+        lo += n;
+    }
+
+    // move the buffered bytes to the front of an array of the given capacity
+    private void resize(int capacity) {
+        byte[] temp = (capacity == buf.length) ? buf : new byte[capacity];
+        System.arraycopy(buf, lo, temp, 0, hi - lo);
+        hi -= lo;
+        lo = 0;
+        buf = temp;
+    }
+
+    /**
+     * Returns the number of bytes currently buffered.
+     * @return the number of bytes currently buffered
+     */
+    public int length() {
+        return hi - lo;
+    }
+
+    /**
+     * Returns the buffered byte at offset <tt>i</tt> from the front of the window.
+     * @param i the offset
+     * @return the byte at offset <tt>i</tt>, from 0 to 255
+     */
+    public int byteAt(int i) {
+        return buf[lo + i] & 0xff;
+    }
+
+    /**
+     * Returns the buffered byte at offset <tt>i</tt> from the front of the
+     * window as an 8-bit character.
+     * @param i the offset
+     * @return the byte at offset <tt>i</tt> as a <tt>char</tt>
+     */
+    public char charAt(int i) {
+        return (char) (buf[lo + i] & 0xff);
+    }
+
+    /**
+     * Returns the backing array, which holds the window in
+     * <tt>[offset(), offset() + length())</tt> until the next <tt>fill</tt>.
+     * @return the backing array
+     */
+    public byte[] array() {
+        return buf;
+    }
+
+    /**
+     * Returns the index in the backing array of the front of the window.
+     * @return the index of the front of the window
+     */
+    public int offset() {
+        return lo;
+    }
+
+    /**
+     * Returns a copy of the buffered characters in <tt>[start, end)</tt>.
+     * @param start the offset of the first character
+     * @param end one past the offset of the last character
+     * @return the characters in <tt>[start, end)</tt>
+     */
+    public CharSequence subSequence(int start, int end) {
+        return new String(buf, lo + start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Returns the buffered characters as a string.
+     * @return the buffered characters as a string
+     */
+    public String toString() {
+        return new String(buf, lo, hi - lo, StandardCharsets.ISO_8859_1);
+    }
+}
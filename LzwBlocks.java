@@ -0,0 +1,438 @@
+/*************************************************************************
+ *  Compilation:  javac LzwBlocks.java
+ *  Dependencies: LzwHeader.java LzwIndex.java LzwEncoder.java LzwDecoder.java
+ *                LzwCoderPool.java BitReader.java BitWriter.java
+ *
+ *  Compress a stream as independently compressed blocks on a thread pool,
+ *  and expand such a stream, sequentially, on a thread pool, or only the
+ *  blocks that overlap a range of bytes.
+ *
+ *************************************************************************/
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ *  The <tt>LzwBlocks</tt> class compresses and expands blocked streams,
+ *  whose header has a nonzero block size. The input is cut into blocks of
+ *  that many bytes (the last may be shorter), and each block is compressed
+ *  with a fresh codebook, so blocks can be compressed concurrently.
+ *  After the header, the stream is a sequence of byte-aligned frames, one
+ *  per block, in input order:
+ *  <pre>
+ *     length      4 bytes   uncompressed length of the block, at least 1
+ *     compressed  4 bytes   length of the codewords that follow
+ *     crc         4 bytes   CRC-32 of the block, only with a CRC-32 checksum
+ *     codewords             the block's codewords, EOF, and zero padding
+ *  </pre>
+ *  followed by a 4-byte zero length that ends the frames, and by the
+ *  {@link LzwIndex} of the blocks.
+ *  <p>
+ *  Blocks are also expanded independently, each into an output array of its
+ *  recorded length. Either way, at most two blocks per processor are in
+ *  flight at once, so memory use is bounded by the block size and the
+ *  processor count, not by the input. The coders are borrowed from an
+ *  {@link LzwCoderPool}, the common one unless the caller passes another,
+ *  so calls made one after another reuse the same codebooks.
+ */
+public final class LzwBlocks {
+    // don't instantiate
+    private LzwBlocks() { }
+
+    // a compressed block
+    private static class Block {
+        private int length;                 // uncompressed length
+        private int crc;                    // CRC-32 of uncompressed bytes
+        private byte[] codewords;           // compressed bytes
+    }
+
+    /**
+     * Compresses the bytes of <tt>in</tt> to <tt>out</tt> as a blocked stream,
+     * compressing blocks concurrently on <tt>pool</tt>, then flushes <tt>out</tt>.
+     * @param header the header of the stream, with a nonzero block size
+     * @param hashed use a {@link CodeTable} dictionary if <tt>true</tt>,
+     *     and an {@link ArrayTST} if <tt>false</tt>
+     * @param in the uncompressed input
+     * @param out the compressed output
+     * @param pool the threads that compress the blocks
+     * @throws IllegalArgumentException if the header has no block size
+     */
+    public static void compress(LzwHeader header, boolean hashed, BitReader in, BitWriter out,
+                                ExecutorService pool) {
+        compress(header, hashed, in, out, pool, LzwCoderPool.common());
+    }
+
+    /**
+     * Compresses the bytes of <tt>in</tt> to <tt>out</tt> as a blocked stream,
+     * compressing blocks concurrently on <tt>pool</tt> with encoders borrowed
+     * from <tt>coders</tt>, then flushes <tt>out</tt>.
+     * @param header the header of the stream, with a nonzero block size
+     * @param hashed use a {@link CodeTable} dictionary if <tt>true</tt>,
+     *     and an {@link ArrayTST} if <tt>false</tt>
+     * @param in the uncompressed input
+     * @param out the compressed output
+     * @param pool the threads that compress the blocks
+     * @param coders the encoders to compress with
+     * @throws IllegalArgumentException if the header has no block size
+     */
+    public static void compress(LzwHeader header, boolean hashed, BitReader in, BitWriter out,
+                                ExecutorService pool, LzwCoderPool coders) {
+        if (header.blockSize() == 0) throw new IllegalArgumentException("Header has no block size");
+        int window = 2 * Runtime.getRuntime().availableProcessors();
+        ArrayDeque<Future<Block>> pending = new ArrayDeque<Future<Block>>();
+        LzwIndex index = new LzwIndex();
+        long offset = header.size();        // bytes written so far
+
+        header.write(out);
+        while (true) {
+            byte[] data = new byte[header.blockSize()];
+            int n = in.read(data, 0, data.length);
+            if (n == 0) break;
+            pending.add(pool.submit(() -> coders.withEncoder(header, hashed, encoder -> compress(encoder, data, n))));
+            if (pending.size() >= window) offset = write(header, join(pending.remove()), out, index, offset);
+        }
+        while (!pending.isEmpty())
+            offset = write(header, join(pending.remove()), out, index, offset);
+        out.write(0);
+        index.write(out, offset + 4);
+        out.flush();
+    }
+
+    // compress data[0..n) with a reset encoder
+    private static Block compress(LzwEncoder encoder, byte[] data, int n) {
+        CRC32 crc = new CRC32();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(n/2 + 16);
+        encoder.compress(new BitReader(new ByteArrayInputStream(data, 0, n)), new BitWriter(bytes), crc);
+        Block block = new Block();
+        block.length = n;
+        block.crc = (int) crc.getValue();
+        block.codewords = bytes.toByteArray();
+        return block;
+    }
+
+    // write one frame at the given offset, add it to the index, and return the offset after it
+    private static long write(LzwHeader header, Block block, BitWriter out, LzwIndex index, long offset) {
+        return writeFrame(header, block.length, block.crc, block.codewords, block.codewords.length,
+                          out, index, offset);
+    }
+
+    /**
+     * Writes the frame of one block at the given offset of the stream and
+     * adds it to the index.
+     * @param header the header of the stream
+     * @param length the uncompressed length of the block, at least 1
+     * @param crc the CRC-32 of the block, written only with a CRC-32 checksum
+     * @param codewords the array holding the codewords of the block
+     * @param len the length of the codewords
+     * @param out the compressed output
+     * @param index the index of the stream
+     * @param offset the offset of the frame in the stream
+     * @return the offset just after the frame
+     */
+    static long writeFrame(LzwHeader header, int length, int crc, byte[] codewords, int len,
+                           BitWriter out, LzwIndex index, long offset) {
+        index.add(offset, len, length);
+        out.write(length);
+        out.write(len);
+        if (header.checksum() == LzwHeader.CHECKSUM_CRC32) out.write(crc);
+        out.write(codewords, 0, len);
+        return offset + frameHeaderSize(header) + len;
+    }
+
+    /**
+     * Returns the number of bytes before the codewords in each frame of a
+     * stream with the given header.
+     * @param header the header of the stream
+     * @return the length of a frame header in bytes
+     */
+    public static int frameHeaderSize(LzwHeader header) {
+        return (header.checksum() == LzwHeader.CHECKSUM_CRC32) ? 12 : 8;
+    }
+
+    // wait for a task, rethrowing its failure unchecked
+    private static <T> T join(Future<T> future) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Expands the frames of a blocked stream, whose header has already been
+     * read, from <tt>in</tt> to <tt>out</tt> one block at a time, then flushes <tt>out</tt>.
+     * The block index is not read.
+     * @param header the header of the stream
+     * @param in the compressed input, positioned just after the header
+     * @param out the uncompressed output
+     * @throws RuntimeException if a frame is corrupt or a checksum does not match
+     */
+    public static void expand(LzwHeader header, BitReader in, BitWriter out) {
+        LzwDecoder decoder = header.newDecoder();
+        boolean checked = (header.checksum() == LzwHeader.CHECKSUM_CRC32);
+        CRC32 crc = new CRC32();
+        while (true) {
+            int length = in.readInt();
+            if (length == 0) break;
+            in.readInt();                   // compressed length: not needed to decode in order
+            int expected = checked ? in.readInt() : 0;
+            crc.reset();
+            decoder.expand(in, out, checked ? crc : null);
+            in.align();
+            if (checked && (int) crc.getValue() != expected) throw new RuntimeException("Checksum mismatch");
+        }
+        out.flush();
+    }
+
+    /**
+     * Expands the frames of a blocked stream, whose header has already been
+     * read, from <tt>in</tt> to <tt>out</tt>, expanding blocks concurrently on
+     * <tt>pool</tt> and writing them in order, then flushes <tt>out</tt>.
+     * The block index is not read.
+     * @param header the header of the stream
+     * @param in the compressed input, positioned just after the header
+     * @param out the uncompressed output
+     * @param pool the threads that expand the blocks
+     * @throws RuntimeException if a frame is corrupt or a checksum does not match
+     */
+    public static void expand(LzwHeader header, BitReader in, BitWriter out, ExecutorService pool) {
+        expand(header, in, out, pool, LzwCoderPool.common());
+    }
+
+    /**
+     * Expands the frames of a blocked stream, whose header has already been
+     * read, from <tt>in</tt> to <tt>out</tt>, expanding blocks concurrently on
+     * <tt>pool</tt> with decoders borrowed from <tt>coders</tt> and writing
+     * them in order, then flushes <tt>out</tt>. The block index is not read.
+     * @param header the header of the stream
+     * @param in the compressed input, positioned just after the header
+     * @param out the uncompressed output
+     * @param pool the threads that expand the blocks
+     * @param coders the decoders to expand with
+     * @throws RuntimeException if a frame is corrupt or a checksum does not match
+     */
+    public static void expand(LzwHeader header, BitReader in, BitWriter out, ExecutorService pool,
+                              LzwCoderPool coders) {
+        boolean checked = (header.checksum() == LzwHeader.CHECKSUM_CRC32);
+        int window = 2 * Runtime.getRuntime().availableProcessors();
+        ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+        while (true) {
+            int length = in.readInt();
+            if (length == 0) break;
+            int compressed = in.readInt();
+            int expected = checked ? in.readInt() : 0;
+            if (length < 0 || length > header.blockSize() || compressed < 0 || compressed > 3L * length + 4)
+                throw new RuntimeException("Corrupt LZW block");
+            byte[] codewords = new byte[compressed];
+            if (in.read(codewords, 0, compressed) != compressed) throw new RuntimeException("Truncated LZW block");
+            pending.add(pool.submit(() -> coders.withDecoder(header, decoder ->
+                expand(decoder, codewords, 0, compressed, length, checked, expected))));
+            if (pending.size() >= window) {
+                byte[] data = join(pending.remove());
+                out.write(data, 0, data.length);
+            }
+        }
+        while (!pending.isEmpty()) {
+            byte[] data = join(pending.remove());
+            out.write(data, 0, data.length);
+        }
+        out.flush();
+    }
+
+    /**
+     * Expands the bytes in <tt>[from, to)</tt> of the blocked stream that fills
+     * the given file to <tt>out</tt>, then flushes <tt>out</tt>. Only the blocks
+     * that overlap the range are read and expanded, found with the stream's
+     * {@link LzwIndex}; <tt>to</tt> may be past the end of the uncompressed data.
+     * @param in the compressed file
+     * @param from the offset of the first uncompressed byte to expand
+     * @param to one past the offset of the last uncompressed byte to expand
+     * @param out the uncompressed output
+     * @throws IllegalArgumentException unless 0 &le; <tt>from</tt> &le; <tt>to</tt>
+     * @throws RuntimeException if the file is not a blocked stream, a block is
+     *     corrupt, or a checksum does not match
+     */
+    public static void expand(FileChannel in, long from, long to, BitWriter out) {
+        expand(in, null, from, to, out);
+    }
+
+    /**
+     * Expands the bytes in <tt>[from, to)</tt> of the blocked stream that fills
+     * the given file to <tt>out</tt>, as <tt>expand(in, from, to, out)</tt>
+     * does, for a stream that may use the given dictionary.
+     * @param in the compressed file
+     * @param dictionary the dictionary, or <tt>null</tt>
+     * @param from the offset of the first uncompressed byte to expand
+     * @param to one past the offset of the last uncompressed byte to expand
+     * @param out the uncompressed output
+     * @throws IllegalArgumentException unless 0 &le; <tt>from</tt> &le; <tt>to</tt>
+     * @throws RuntimeException if the file is not a blocked stream, it uses
+     *     another dictionary, a block is corrupt, or a checksum does not match
+     */
+    public static void expand(FileChannel in, LzwDictionary dictionary, long from, long to, BitWriter out) {
+        if (from < 0 || from > to) throw new IllegalArgumentException("Illegal range " + from + " to " + to);
+        try {
+            LzwHeader header = LzwHeader.read(new BitReader(Channels.newInputStream(in.position(0))), dictionary);
+            if (header.blockSize() == 0) throw new RuntimeException("Not a blocked LZW stream");
+            LzwIndex index = LzwIndex.read(in, header);
+            to = Math.min(to, index.start(index.size()));
+            if (from >= to) { out.flush(); return; }
+
+            LzwDecoder decoder = header.newDecoder();
+            boolean checked = (header.checksum() == LzwHeader.CHECKSUM_CRC32);
+            int head = frameHeaderSize(header);
+            long frames = in.size() - index.bytes();    // end of the frames
+            for (int k = index.block(from); k < index.size() && index.start(k) < to; k++) {
+                if (!LzwIndex.fits(header, index.offset(k), index.compressedLength(k), index.length(k),
+                                   header.size(), frames))
+                    throw new RuntimeException("Corrupt LZW index");
+                ByteBuffer frame = ByteBuffer.allocate(head + index.compressedLength(k));
+                LzwIndex.readFully(in, frame, index.offset(k));
+                if (frame.getInt(0) != index.length(k) || frame.getInt(4) != index.compressedLength(k))
+                    throw new RuntimeException("Corrupt LZW index");
+                int expected = checked ? frame.getInt(8) : 0;
+                byte[] data = expand(decoder, frame.array(), head, index.compressedLength(k),
+                                     index.length(k), checked, expected);
+                int lo = (int) Math.max(from - index.start(k), 0);
+                int hi = (int) Math.min(to - index.start(k), data.length);
+                out.write(data, lo, hi - lo);
+            }
+            out.flush();
+        }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+
+    /**
+     * Expands the codewords of one block into a new array of its uncompressed length.
+     * @param decoder the decoder to use, which is reset first
+     * @param codewords the array holding the codewords of the block
+     * @param off the offset of the codewords in the array
+     * @param len the length of the codewords
+     * @param length the uncompressed length of the block
+     * @param checked whether to compare the CRC-32 of the block with <tt>expected</tt>
+     * @param expected the CRC-32 recorded for the block
+     * @return the uncompressed block
+     * @throws RuntimeException if the block does not expand to <tt>length</tt>
+     *     bytes or its checksum does not match
+     */
+    static byte[] expand(LzwDecoder decoder, byte[] codewords, int off, int len,
+                         int length, boolean checked, int expected) {
+        byte[] data = new byte[length];
+        expand(decoder, codewords, off, len, data, length, checked, expected);
+        return data;
+    }
+
+    /**
+     * Expands the codewords of one block into the start of an existing array.
+     * @param decoder the decoder to use, which is reset first
+     * @param codewords the array holding the codewords of the block
+     * @param off the offset of the codewords in the array
+     * @param len the length of the codewords
+     * @param data the array to expand into, at least <tt>length</tt> long
+     * @param length the uncompressed length of the block
+     * @param checked whether to compare the CRC-32 of the block with <tt>expected</tt>
+     * @param expected the CRC-32 recorded for the block
+     * @throws RuntimeException if the block does not expand to <tt>length</tt>
+     *     bytes or its checksum does not match
+     */
+    static void expand(LzwDecoder decoder, byte[] codewords, int off, int len,
+                       byte[] data, int length, boolean checked, int expected) {
+        Region region = new Region(data, length);
+        CRC32 crc = checked ? new CRC32() : null;
+        decoder.expand(new BitReader(new ByteArrayInputStream(codewords, off, len)), new BitWriter(region), crc);
+        if (region.n != length) throw new RuntimeException("Corrupt LZW block");
+        if (checked && (int) crc.getValue() != expected) throw new RuntimeException("Checksum mismatch");
+    }
+
+    // an output stream over the start of a preallocated array that refuses to overflow it
+    private static class Region extends OutputStream {
+        private final byte[] a;             // the output
+        private final int limit;            // length of the region of a
+        private int n;                      // number of bytes written
+
+        Region(byte[] a, int limit) {
+            this.a = a;
+            this.limit = limit;
+        }
+
+        public void write(int b) {
+            if (n == limit) throw new RuntimeException("Corrupt LZW block");
+            a[n++] = (byte) b;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            if (len > limit - n) throw new RuntimeException("Corrupt LZW block");
+            System.arraycopy(b, off, a, n, len);
+            n += len;
+        }
+    }
+
+    /**
+     * Unit tests <tt>LzwBlocks</tt>: compresses random text as a blocked
+     * stream into a temporary file, and checks that expanding ranges of it,
+     * within a block, across block boundaries, empty, and reaching past the
+     * end, gives the same bytes as the slice of a full expand.
+     */
+    public static void main(String[] args) throws IOException {
+        Random random = new Random(1);
+        byte[] data = new byte[300000];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) ('a' + Math.min(random.nextInt(32), random.nextInt(32)));
+        LzwHeader header = new LzwHeader('n', 9, 12, LzwHeader.CHECKSUM_CRC32, 1 << 14);
+        Path file = Files.createTempFile("LzwBlocks", ".lzw");
+        try {
+            try (BitWriter out = new BitWriter(Files.newOutputStream(file))) {
+                compress(header, true, new BitReader(new ByteArrayInputStream(data)), out, ForkJoinPool.commonPool());
+            }
+            ByteArrayOutputStream all = new ByteArrayOutputStream();
+            try (BitReader in = new BitReader(Files.newInputStream(file))) {
+                expand(LzwHeader.read(in), in, new BitWriter(all), ForkJoinPool.commonPool());
+            }
+            if (!Arrays.equals(data, all.toByteArray())) throw new RuntimeException("Full expand failed");
+
+            long[][] ranges = { { 0, 1 }, { 100, 200 }, { 16383, 16385 }, { 5000, 70000 }, { 0, data.length },
+                                { 7, 7 }, { data.length - 10, Long.MAX_VALUE }, { data.length, data.length + 5 } };
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                for (int k = 0; k < ranges.length + 100; k++) {
+                    long from, to;
+                    if (k < ranges.length) { from = ranges[k][0]; to = ranges[k][1]; }
+                    else {
+                        from = random.nextInt(data.length);
+                        to = from + random.nextInt(50000);
+                    }
+                    ByteArrayOutputStream part = new ByteArrayOutputStream();
+                    expand(in, from, to, new BitWriter(part));
+                    byte[] slice = Arrays.copyOfRange(data, (int) from, (int) Math.min(to, data.length));
+                    if (!Arrays.equals(slice, part.toByteArray()))
+                        throw new RuntimeException("Range " + from + " to " + to + " failed");
+                }
+            }
+            StdOut.println("range expand ok: " + (ranges.length + 100) + " ranges of " + data.length + " bytes");
+        }
+        finally { Files.delete(file); }
+    }
+}
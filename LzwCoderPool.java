@@ -0,0 +1,113 @@
+/*************************************************************************
+ *  Compilation:  javac LzwCoderPool.java
+ *  Dependencies: LzwHeader.java LzwEncoder.java LzwDecoder.java
+ *
+ *  Idle LZW encoders and decoders, kept across calls so that the codebooks
+ *  they allocate are reused rather than dropped.
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ *  The <tt>LzwCoderPool</tt> class keeps idle {@link LzwEncoder}s and
+ *  {@link LzwDecoder}s between uses, keyed by the header settings that
+ *  configure them: the reset mode, the codeword widths, the dictionary ID,
+ *  and for encoders the kind of codebook. A coder allocates its codebook
+ *  once, off the heap for a {@link CodeTable} or a decoder, and that can be
+ *  many megabytes at wide codewords; a coder borrowed from the pool is
+ *  reset and reused, so repeated calls on a shared thread pool allocate
+ *  codebooks only until the pool holds enough coders for the work in
+ *  flight, and none after.
+ *  <p>
+ *  At most <em>capacity</em> idle coders are kept for each setting; one
+ *  returned to a full pool is dropped. <em>clear</em> drops every idle
+ *  coder. The pool is thread-safe, and each borrowed coder is used by one
+ *  thread at a time.
+ */
+public class LzwCoderPool {
+    private static final LzwCoderPool COMMON =
+        new LzwCoderPool(2 * Runtime.getRuntime().availableProcessors());
+
+    private final int capacity;             // max idle coders per setting
+    private final ConcurrentHashMap<List<Object>, ArrayBlockingQueue<Object>> idle =
+        new ConcurrentHashMap<List<Object>, ArrayBlockingQueue<Object>>();
+
+    /**
+     * Initializes an empty pool.
+     * @param capacity the maximum number of idle coders kept for each setting
+     * @throws IllegalArgumentException unless <tt>capacity</tt> &ge; 1
+     */
+    public LzwCoderPool(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be >= 1");
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the pool shared by the calls that are not given one, which
+     * keeps two coders per processor for each setting.
+     * @return the common pool
+     */
+    public static LzwCoderPool common() {
+        return COMMON;
+    }
+
+    /**
+     * Runs <tt>work</tt> with an encoder configured by <tt>header</tt>,
+     * borrowed from this pool or created if none is idle, and returns it to
+     * the pool afterwards, even if <tt>work</tt> throws.
+     * @param header the header configuring the encoder
+     * @param hashed use a {@link CodeTable} dictionary if <tt>true</tt>,
+     *     and an {@link ArrayTST} if <tt>false</tt>
+     * @param work what to do with the encoder
+     * @return the result of <tt>work</tt>
+     */
+    public <T> T withEncoder(LzwHeader header, boolean hashed, Function<LzwEncoder, T> work) {
+        List<Object> key = key(header, hashed ? 'h' : 't');
+        LzwEncoder encoder = (LzwEncoder) queue(key).poll();
+        if (encoder == null) encoder = header.newEncoder(hashed);
+        try {
+            return work.apply(encoder);
+        }
+        finally { queue(key).offer(encoder); }
+    }
+
+    /**
+     * Runs <tt>work</tt> with a decoder configured by <tt>header</tt>,
+     * borrowed from this pool or created if none is idle, and returns it to
+     * the pool afterwards, even if <tt>work</tt> throws.
+     * @param header the header configuring the decoder
+     * @param work what to do with the decoder
+     * @return the result of <tt>work</tt>
+     */
+    public <T> T withDecoder(LzwHeader header, Function<LzwDecoder, T> work) {
+        List<Object> key = key(header, 'd');
+        LzwDecoder decoder = (LzwDecoder) queue(key).poll();
+        if (decoder == null) decoder = header.newDecoder();
+        try {
+            return work.apply(decoder);
+        }
+        finally { queue(key).offer(decoder); }
+    }
+
+    /**
+     * Drops every idle coder, so its codebook can be freed.
+     */
+    public void clear() {
+        idle.clear();
+    }
+
+    // the settings that configure a coder of the given kind
+    private static List<Object> key(LzwHeader header, char kind) {
+        int id = (header.dictionary() == null) ? 0 : header.dictionary().id();
+        return Arrays.<Object>asList(kind, header.mode(), header.minWidth(), header.maxWidth(), id);
+    }
+
+    private ArrayBlockingQueue<Object> queue(List<Object> key) {
+        return idle.computeIfAbsent(key, k -> new ArrayBlockingQueue<Object>(capacity));
+    }
+}
@@ -0,0 +1,304 @@
+/*************************************************************************
+ *  Compilation:  javac LzwDecoder.java
+ *  Dependencies: BitReader.java BitWriter.java LeafLru.java LzwDictionary.java
+ *
+ *  Reusable variable-width LZW expander.
+ *
+ *************************************************************************/
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+/**
+ *  The <tt>LzwDecoder</tt> class expands codewords written by an
+ *  {@link LzwEncoder} with the same codebook policy and codeword widths.
+ *  <p>
+ *  Codeword <em>c</em> is stored as one 32-bit entry packing the codeword
+ *  of the phrase minus its last byte (its <em>prefix</em>) and that last
+ *  byte (its <em>suffix</em>). The entries live in a direct
+ *  {@link ByteBuffer}, outside the Java heap, sized for <em>maxWidth</em>
+ *  when the decoder is created and reused by <em>reset</em>; codewords
+ *  may be up to 24 bits. Each phrase is unwound back to front into a
+ *  reusable byte stack, which grows only if a phrase is longer than any
+ *  before it, and written in bulk, so nothing is allocated per codeword.
+ *  The phrases of an {@link LzwDictionary}, after EOF, are unwound through
+ *  the dictionary's own shared entries and never overwritten, so resets
+ *  keep them for free.
+ *  A policy that recycles codewords keeps a {@link LeafLru} updated
+ *  exactly as the encoder's, so both recycle the same codewords.
+ *  Decoders are not thread-safe; use one per thread.
+ *  Width changes, full codebooks and resets are reported through {@link LzwEvents}.
+ */
+public class LzwDecoder {
+    private static final int R = 256;       // number of input chars, and codeword for EOF
+
+    private final CodebookPolicy policy;    // what to do when the codebook is full
+    private final int minWidth;             // initial codeword width
+    private final int maxWidth;             // maximum codeword width
+    private final LzwDictionary dictionary; // phrases seeded after EOF, or null
+    private final int first;                // first codeword after EOF and the dictionary
+    private final int startWidth;           // codeword width after a reset
+    private final ByteBuffer entries;       // entry c = prefix of phrase c << 8 | last byte of phrase c
+    private final LeafLru lru;              // order to recycle codewords in, or null
+    private byte[] stack;                   // current phrase, unwound into stack[pos..]
+
+    private int W;                          // current codeword width
+    private int L;                          // number of codewords = 2^W
+    private int i;                          // next available codeword
+    private long uncomp;                    // bits written so far
+    private long comp;                      // bits read so far
+
+    private LzwEvents.Segment segment;      // event timing the current segment
+    private long segmentUncomp;             // uncomp when the segment began
+    private long segmentComp;               // comp when the segment began
+    private boolean filled;                 // has the codebook filled in this segment?
+
+    /**
+     * Initializes a decoder with the given reset mode and 9 to 16 bit codewords.
+     * @param mode the reset mode, one of <tt>'n'</tt>, <tt>'r'</tt>, <tt>'m'</tt>, <tt>'w'</tt> or <tt>'l'</tt>
+     * @throws IllegalArgumentException if <tt>mode</tt> is not a reset mode
+     */
+    public LzwDecoder(char mode) {
+        this(mode, 9, 16);
+    }
+
+    /**
+     * Initializes a decoder with the built-in policy for a reset mode.
+     * @param mode the reset mode, one of <tt>'n'</tt>, <tt>'r'</tt>, <tt>'m'</tt>, <tt>'w'</tt> or <tt>'l'</tt>
+     * @param minWidth the initial codeword width
+     * @param maxWidth the maximum codeword width
+     * @throws IllegalArgumentException if <tt>mode</tt> is not a reset mode
+     * @throws IllegalArgumentException unless 9 &le; <tt>minWidth</tt> &le;
+     *     <tt>maxWidth</tt> &le; 24
+     */
+    public LzwDecoder(char mode, int minWidth, int maxWidth) {
+        this(CodebookPolicy.forMode(mode), minWidth, maxWidth);
+    }
+
+    /**
+     * Initializes a decoder.
+     * @param policy decides when to clear the full codebook; must equal the
+     *     encoder's, and not be shared with other coders
+     * @param minWidth the initial codeword width
+     * @param maxWidth the maximum codeword width
+     * @throws IllegalArgumentException unless 9 &le; <tt>minWidth</tt> &le;
+     *     <tt>maxWidth</tt> &le; 24
+     */
+    public LzwDecoder(CodebookPolicy policy, int minWidth, int maxWidth) {
+        this(policy, minWidth, maxWidth, null);
+    }
+
+    /**
+     * Initializes a decoder whose codebook is seeded with the phrases of a dictionary.
+     * @param policy decides when to clear the full codebook; must equal the
+     *     encoder's, and not be shared with other coders
+     * @param minWidth the initial codeword width, raised if needed to code the dictionary
+     * @param maxWidth the maximum codeword width
+     * @param dictionary the phrases to seed the codebook with, or <tt>null</tt>;
+     *     must be the encoder's
+     * @throws IllegalArgumentException unless 9 &le; <tt>minWidth</tt> &le;
+     *     <tt>maxWidth</tt> &le; 24
+     * @throws IllegalArgumentException if the dictionary does not fit in
+     *     <tt>maxWidth</tt>-bit codewords
+     */
+    public LzwDecoder(CodebookPolicy policy, int minWidth, int maxWidth, LzwDictionary dictionary) {
+        if (policy == null) throw new NullPointerException();
+        if (minWidth < 9 || minWidth > maxWidth || maxWidth > 24)
+            throw new IllegalArgumentException("Illegal codeword widths " + minWidth + " to " + maxWidth);
+        this.first = (dictionary == null) ? R+1 : dictionary.end();
+        if (first > 1 << maxWidth)
+            throw new IllegalArgumentException("Dictionary does not fit in " + maxWidth + "-bit codewords");
+        this.policy = policy;
+        this.minWidth = minWidth;
+        this.maxWidth = maxWidth;
+        this.dictionary = dictionary;
+        this.startWidth = LzwEncoder.startWidth(minWidth, first);
+        entries = ByteBuffer.allocateDirect(4 << maxWidth).order(ByteOrder.nativeOrder());
+        lru = policy.recycles() ? new LeafLru(first, 1 << maxWidth) : null;
+        stack = new byte[1 << Math.min(maxWidth, 16)];
+        reset();
+    }
+
+    /**
+     * Returns the codebook policy.
+     * @return the codebook policy
+     */
+    public CodebookPolicy policy() {
+        return policy;
+    }
+
+    /**
+     * Returns the dictionary seeding the codebook.
+     * @return the dictionary, or <tt>null</tt>
+     */
+    public LzwDictionary dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Returns the initial codeword width.
+     * @return the initial codeword width
+     */
+    public int minWidth() {
+        return minWidth;
+    }
+
+    /**
+     * Returns the maximum codeword width.
+     * @return the maximum codeword width
+     */
+    public int maxWidth() {
+        return maxWidth;
+    }
+
+    /**
+     * Clears the codebook back to the single-byte codewords and any seeded
+     * phrases, and resets the codeword width and ratio statistics, reusing
+     * the codebook arrays.
+     */
+    public void reset() {
+        clearCodebook();
+        uncomp = 0;
+        comp = 0;
+        policy.clear();
+    }
+
+    // drop all codewords after the dictionary
+    private void clearCodebook() {
+        if (lru != null) lru.clear();
+        i = first;
+        W = startWidth;
+        L = 1 << W;
+    }
+
+    /**
+     * Expands the codewords of <tt>in</tt>, up to and including the EOF
+     * codeword, to <tt>out</tt> and flushes <tt>out</tt>. The decoder is reset first.
+     * @param in the compressed input
+     * @param out the uncompressed output
+     */
+    public void expand(BitReader in, BitWriter out) {
+        expand(in, out, null);
+    }
+
+    /**
+     * Expands the codewords of <tt>in</tt>, up to and including the EOF
+     * codeword, to <tt>out</tt> and flushes <tt>out</tt>. The decoder is reset first.
+     * @param in the compressed input
+     * @param out the uncompressed output
+     * @param sum if not <tt>null</tt>, updated with every byte of the output
+     */
+    public void expand(BitReader in, BitWriter out, Checksum sum) {
+        reset();
+        beginSegment();
+        int codeword = in.readInt(W);
+        if (codeword == R) {                            // expanded message is empty string
+            comp += W;
+            endSegment(false);
+            out.flush();
+            return;
+        }
+        int pos = unwind(codeword);
+        int prev = codeword;                            // codeword of current phrase
+
+        while (true) {
+            uncomp += 8*(stack.length - pos);
+            comp += W;
+            boolean cleared = false;
+            if (i == L) {
+                if (W < maxWidth) {
+                    W++;
+                    L <<= 1;
+                    LzwEvents.widthChange("expand", W, (uncomp - segmentUncomp) / 8);
+                }
+                else cleared = full();
+            }
+            if (lru != null) lru.used(prev);
+            out.write(stack, pos, stack.length - pos);
+            if (sum != null) sum.update(stack, pos, stack.length - pos);
+            codeword = in.readInt(W);
+            if (codeword == R) {
+                comp += W;
+                break;
+            }
+            // like the encoder, add nothing in the step that cleared the codebook
+            int next = cleared ? -1 : (i < L) ? i : recycle(prev);
+            if (next == i) i++;
+            boolean special = (next == codeword);   // s is the previous phrase plus its first byte
+            if (!special) pos = unwind(codeword);
+            if (next != -1) {                       // previous phrase plus first byte of s
+                entries.putInt(next << 2, (prev << 8) | (stack[pos] & 0xff));
+                if (lru != null) lru.added(next, prev, stack[pos] & 0xff);
+            }
+            if (special) pos = unwind(codeword);
+            prev = codeword;
+        }
+        endSegment(false);
+        out.flush();
+    }
+
+    // drop the least recently used leaf, unless it is the phrase about to be
+    // extended, and return its codeword, or -1 if there is none to recycle;
+    // a leaf is part of no other phrase, so overwriting its entry leaves
+    // every other phrase intact
+    private int recycle(int prev) {
+        if (lru == null) return -1;
+        int victim = lru.victim();
+        if (victim == -1 || victim == prev) return -1;
+        lru.evict(victim);
+        return victim;
+    }
+
+    // start timing a segment of the codebook
+    private void beginSegment() {
+        segment = LzwEvents.beginSegment();
+        segmentUncomp = uncomp;
+        segmentComp = comp;
+        filled = false;
+    }
+
+    // end the current segment, by a reset or at the end of the stream
+    private void endSegment(boolean reset) {
+        LzwEvents.endSegment(segment, "expand", W, (comp - segmentComp + 7) / 8,
+                             (uncomp - segmentUncomp) / 8, reset);
+    }
+
+    // apply the policy to a full codebook, exactly as the encoder does;
+    // return true if it was cleared
+    private boolean full() {
+        if (!filled) {
+            filled = true;
+            LzwEvents.codebookFull("expand", policy, (double) uncomp / comp);
+        }
+        if (!policy.full(uncomp, comp)) return false;
+        LzwEvents.codebookReset("expand", policy, (double) uncomp / comp);
+        endSegment(true);
+        clearCodebook();
+        policy.clear();
+        beginSegment();
+        return true;
+    }
+
+    // write the phrase for codeword c into the end of stack, returning its start
+    private int unwind(int c) {
+        int pos = stack.length;
+        while (c > R) {
+            if (pos == 1) pos = grow(pos);      // keep room for the first byte
+            int entry = (c < first) ? dictionary.entry(c) : entries.getInt(c << 2);
+            stack[--pos] = (byte) entry;
+            c = entry >>> 8;
+        }
+        stack[--pos] = (byte) c;
+        return pos;
+    }
+
+    // double the stack, keeping stack[pos..] at its end, and return the new pos
+    private int grow(int pos) {
+        byte[] temp = new byte[2*stack.length];
+        System.arraycopy(stack, pos, temp, temp.length - (stack.length - pos), stack.length - pos);
+        pos += temp.length - stack.length;
+        stack = temp;
+        return pos;
+    }
+}
@@ -0,0 +1,482 @@
+/*************************************************************************
+ *  Compilation:  javac LzwDictionary.java
+ *  Dependencies: BitReader.java BitWriter.java CodeTable.java LookaheadBuffer.java
+ *                MyLZW.java
+ *
+ *  A pre-trained set of LZW phrases that seeds the codebook beyond the
+ *  single-byte codewords, so short messages compress well from the start,
+ *  stored in a file or as a snapshot that is used straight from a memory map.
+ *
+ *************************************************************************/
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ *  The <tt>LzwDictionary</tt> class represents phrases that an {@link LzwEncoder}
+ *  and {@link LzwDecoder} have in their codebook before coding any input.
+ *  Phrase <em>k</em> gets codeword R + 1 + <em>k</em>, right after EOF, and
+ *  is stored like a decoder entry, as the codeword of the phrase minus its
+ *  last byte (its <em>prefix</em>) and that last byte (its <em>suffix</em>);
+ *  every prefix is a single byte or an earlier phrase.
+ *  <p>
+ *  <em>train</em> builds a dictionary from a sample of the data to be
+ *  compressed: it runs LZW over the sample with a large codebook, counting
+ *  how many times each phrase is matched, and keeps the most matched phrases.
+ *  A phrase is matched whenever a phrase extending it is, so the kept
+ *  phrases are closed under taking prefixes.
+ *  <p>
+ *  A dictionary is identified by a nonzero 32-bit ID, the CRC-32 of its
+ *  entries, which a stream's {@link LzwHeader} records so that it only
+ *  expands with the same dictionary. The file format is
+ *  <pre>
+ *     magic      4 bytes   "LZWD"
+ *     id         4 bytes   dictionary ID
+ *     size       4 bytes   number of phrases
+ *     entries    4 bytes each, prefix &lt;&lt; 8 | suffix
+ *  </pre>
+ *  with big-endian fields.
+ *  <p>
+ *  A dictionary is frozen: its entries, which the decoder unwinds phrases
+ *  through, and a {@link CodeTable} of its phrases, which the encoder looks
+ *  them up in, are built once and shared read-only by every coder, so
+ *  coders neither copy nor re-insert the phrases. <em>writeSnapshot</em>
+ *  writes both as flat arrays, and <em>map</em> uses such a snapshot
+ *  straight from a read-only memory map, sharing its pages with every
+ *  other process that maps the same file. Mapping a snapshot is not
+ *  constant-time: it checks the entries, a fifth of the file or less, in
+ *  one pass, since every coder unwinds or matches phrases through them.
+ *  The table, the rest of the file, is checked against its CRC-32 only
+ *  when the first encoder is made with the dictionary, so a process that
+ *  only expands never reads it. The snapshot format is
+ *  <pre>
+ *     magic      4 bytes   "LZWS"
+ *     id         4 bytes   dictionary ID
+ *     size       4 bytes   number of phrases
+ *     slots      4 bytes   number of slots of the table, a power of two
+ *     tableCrc   4 bytes   CRC-32 of the table
+ *     (zero)     4 bytes
+ *     entries    4 bytes each, prefix &lt;&lt; 8 | suffix
+ *     (zeros)    to a multiple of 8 bytes
+ *     table      8 bytes per slot, see CodeTable
+ *  </pre>
+ *  again big-endian. Dictionaries are immutable and thread-safe.
+ */
+public class LzwDictionary {
+    /**
+     * The 4 bytes "LZWD" that start every dictionary file.
+     */
+    public static final int MAGIC = 0x4C5A5744;
+
+    /**
+     * The 4 bytes "LZWS" that start every dictionary snapshot.
+     */
+    public static final int SNAPSHOT_MAGIC = 0x4C5A5753;
+
+    private static final int R = 256;               // number of input chars, and codeword for EOF
+    private static final int MAX_CODES = 1 << 24;   // codewords are at most 24 bits
+    private static final int TRAINING_CODES = 1 << 20;  // codebook size while training
+    private static final int SNAPSHOT_HEADER = 24;      // bytes before the entries of a snapshot
+
+    private final ByteBuffer entries;   // int k = prefix << 8 | suffix of codeword R+1+k, big-endian
+    private final CodeTable table;      // the phrases, all seeded
+    private final int size;             // number of phrases
+    private final int id;               // CRC-32 of the entries, or 1 if that is 0
+    private final int maxLength;        // length of the longest phrase, at least 1
+    private final int tableCrc;         // CRC-32 of the slots of a snapshot's table
+    private volatile ByteBuffer unchecked;  // those slots until checked, or null
+
+    /**
+     * Initializes a dictionary from its entries.
+     * @param entries <tt>entries[k]</tt> is the prefix of phrase <em>k</em>,
+     *     shifted left 8 bits, or'd with its suffix
+     * @throws IllegalArgumentException if a prefix is EOF or not an earlier
+     *     codeword, or there are more than 2<sup>24</sup> - R - 1 phrases
+     */
+    public LzwDictionary(int[] entries) {
+        if (entries.length > MAX_CODES - R - 1)
+            throw new IllegalArgumentException("Too many phrases " + entries.length);
+        ByteBuffer bb = ByteBuffer.allocateDirect(4 * entries.length);
+        bb.asIntBuffer().put(entries);
+        this.maxLength = check(bb, entries.length);
+        this.entries = bb.asReadOnlyBuffer().order(ByteOrder.BIG_ENDIAN);
+        this.size = entries.length;
+        this.id = id(bb);
+        this.tableCrc = 0;
+        this.table = new CodeTable(Math.max(size, 1));
+        for (int c = R+1; c < end(); c++)
+            table.seed(prefix(c), suffix(c), c);
+    }
+
+    // a mapped snapshot, whose slots are checked against tableCrc on first use
+    private LzwDictionary(ByteBuffer entries, ByteBuffer slots, int tableCrc, int size, int id, int maxLength) {
+        this.entries = entries;
+        this.table = new CodeTable(slots, size);
+        this.tableCrc = tableCrc;
+        this.unchecked = slots;
+        this.size = size;
+        this.id = id;
+        this.maxLength = maxLength;
+    }
+
+    // check that every prefix is a single byte or an earlier phrase, and
+    // return the length of the longest phrase
+    private static int check(ByteBuffer entries, int size) {
+        int[] length = new int[size];       // length[k] = length of phrase k
+        int longest = 1;
+        for (int k = 0; k < size; k++) {
+            int prefix = entries.getInt(k << 2) >>> 8;
+            if (prefix == R || prefix >= R + 1 + k)
+                throw new IllegalArgumentException("Illegal prefix " + prefix + " of codeword " + (R + 1 + k));
+            length[k] = (prefix < R) ? 2 : length[prefix - R - 1] + 1;
+            longest = Math.max(longest, length[k]);
+        }
+        return longest;
+    }
+
+    // the ID of a dictionary with the given entries
+    private static int id(ByteBuffer entries) {
+        CRC32 crc = new CRC32();
+        crc.update(entries.duplicate());
+        int value = (int) crc.getValue();
+        return (value == 0) ? 1 : value;
+    }
+
+    /**
+     * Returns the ID of this dictionary.
+     * @return the ID, never 0
+     */
+    public int id() {
+        return id;
+    }
+
+    /**
+     * Returns the number of phrases in this dictionary.
+     * @return the number of phrases
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the length of the longest phrase of this dictionary, which
+     * an encoder must be able to see ahead in its input to match it.
+     * @return the length in bytes of the longest phrase, or 1 if there are none
+     */
+    public int maxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Returns the first codeword after the phrases of this dictionary.
+     * @return R + 1 + <tt>size()</tt>
+     */
+    public int end() {
+        return R + 1 + size;
+    }
+
+    /**
+     * Returns the prefix of the phrase with codeword <tt>c</tt>.
+     * @param c a codeword with R &lt; <tt>c</tt> &lt; <tt>end()</tt>
+     * @return the codeword of the phrase minus its last byte
+     */
+    public int prefix(int c) {
+        return entry(c) >>> 8;
+    }
+
+    /**
+     * Returns the suffix of the phrase with codeword <tt>c</tt>.
+     * @param c a codeword with R &lt; <tt>c</tt> &lt; <tt>end()</tt>
+     * @return the last byte of the phrase
+     */
+    public int suffix(int c) {
+        return entry(c) & 0xff;
+    }
+
+    /**
+     * Returns the entry of the phrase with codeword <tt>c</tt>, packed as
+     * in an {@link LzwDecoder}.
+     * @param c a codeword with R &lt; <tt>c</tt> &lt; <tt>end()</tt>
+     * @return the prefix of the phrase, shifted left 8 bits, or'd with its suffix
+     */
+    int entry(int c) {
+        return entries.getInt((c - R - 1) << 2);
+    }
+
+    /**
+     * Returns the code of the phrase <tt>prefix</tt> extended by <tt>b</tt>.
+     * @param prefix the code of the prefix phrase
+     * @param b the extending byte
+     * @return the code of the extended phrase, or -1 if it is not in this dictionary
+     */
+    int get(int prefix, int b) {
+        return table.get(prefix, b);
+    }
+
+    /**
+     * Checks the table of a mapped snapshot against the CRC-32 in its
+     * header, the first time this is called; <em>get</em> must not be
+     * called before. Does nothing for a dictionary that was not mapped.
+     * @throws RuntimeException if the table does not match its CRC-32
+     */
+    void checkTable() {
+        if (unchecked == null) return;
+        synchronized (this) {
+            if (unchecked == null) return;
+            CRC32 crc = new CRC32();
+            crc.update(unchecked.duplicate());
+            if ((int) crc.getValue() != tableCrc)
+                throw new RuntimeException("Corrupt LZW dictionary snapshot: checksum mismatch");
+            unchecked = null;
+        }
+    }
+
+    /**
+     * Returns the phrase with codeword <tt>c</tt>, one char per byte.
+     * @param c a codeword with R &lt; <tt>c</tt> &lt; <tt>end()</tt>
+     * @return the phrase
+     */
+    public String phrase(int c) {
+        return new String(bytes(c), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Returns the bytes of the phrase with codeword <tt>c</tt>.
+     * @param c a codeword with R &lt; <tt>c</tt> &lt; <tt>end()</tt>
+     * @return the bytes of the phrase
+     */
+    public byte[] bytes(int c) {
+        int n = 1;
+        for (int p = c; p > R; p = prefix(p))
+            n++;
+        byte[] a = new byte[n];
+        for (; c > R; c = prefix(c))
+            a[--n] = (byte) suffix(c);
+        a[0] = (byte) c;
+        return a;
+    }
+
+    /**
+     * Builds a dictionary of the phrases most often matched when compressing
+     * the bytes of <tt>in</tt>.
+     * @param in the sample
+     * @param size the maximum number of phrases
+     * @return the dictionary
+     * @throws IllegalArgumentException unless 0 &le; <tt>size</tt> &le; 2<sup>24</sup> - R - 1
+     */
+    public static LzwDictionary train(BitReader in, int size) {
+        if (size < 0 || size > MAX_CODES - R - 1) throw new IllegalArgumentException("Illegal size " + size);
+        int maxCodes = Math.max(TRAINING_CODES, R + 1 + size);
+        CodeTable table = new CodeTable(maxCodes);
+        int[] keys = new int[maxCodes];     // keys[c] = prefix << 8 | suffix of codeword c
+        long[] counts = new long[maxCodes]; // counts[c] = times codeword c was matched
+        int code = R+1;                     // next available codeword
+
+        LookaheadBuffer input = new LookaheadBuffer(in);
+        int lookahead = 2;
+        while (input.fill(lookahead) > 0) {
+            int s = input.byteAt(0);
+            int t;
+            for (t = 1; t < input.length(); t++) {
+                int next = table.get(s, input.byteAt(t));
+                if (next == -1) break;
+                s = next;
+                counts[s]++;
+            }
+            if (t < input.length() && code < maxCodes) {
+                table.put(s, input.byteAt(t), code);
+                keys[code++] = (s << 8) | input.byteAt(t);
+            }
+            if (t + 2 > lookahead) lookahead = t + 2;
+            input.skip(t);
+        }
+
+        // rank by count, then by codeword, so every phrase ranks after its prefix
+        int n = code - (R+1);
+        long[] ranked = new long[n];
+        for (int c = R+1; c < code; c++)
+            ranked[c - (R+1)] = (counts[c] << 24) | (MAX_CODES - 1 - c);
+        Arrays.sort(ranked);
+        size = Math.min(size, n);
+        int[] kept = new int[size];
+        for (int k = 0; k < size; k++)
+            kept[k] = MAX_CODES - 1 - (int) (ranked[n - 1 - k] & (MAX_CODES - 1));
+
+        // renumber the kept phrases in codeword order, so prefixes come first
+        Arrays.sort(kept);
+        int[] renumbered = new int[code];
+        int[] entries = new int[size];
+        for (int k = 0; k < size; k++) {
+            int c = kept[k];
+            int prefix = keys[c] >>> 8;
+            if (prefix > R) prefix = renumbered[prefix];
+            renumbered[c] = R + 1 + k;
+            entries[k] = (prefix << 8) | (keys[c] & 0xff);
+        }
+        return new LzwDictionary(entries);
+    }
+
+    /**
+     * Reads a dictionary from the input.
+     * @param in the input
+     * @return the dictionary
+     * @throws RuntimeException if the input does not hold a valid dictionary
+     */
+    public static LzwDictionary read(BitReader in) {
+        if (in.readInt() != MAGIC) throw new RuntimeException("Not an LZW dictionary");
+        int id = in.readInt();
+        int size = in.readInt();
+        if (size < 0 || size > MAX_CODES - R - 1) throw new RuntimeException("Corrupt LZW dictionary");
+        int[] entries = new int[size];
+        for (int k = 0; k < size; k++)
+            entries[k] = in.readInt();
+        LzwDictionary dictionary;
+        try {
+            dictionary = new LzwDictionary(entries);
+        }
+        catch (IllegalArgumentException e) {
+            throw new RuntimeException("Corrupt LZW dictionary: " + e.getMessage());
+        }
+        if (dictionary.id != id) throw new RuntimeException("Corrupt LZW dictionary: ID mismatch");
+        return dictionary;
+    }
+
+    /**
+     * Writes this dictionary to the output.
+     * @param out the output
+     */
+    public void write(BitWriter out) {
+        out.write(MAGIC);
+        out.write(id);
+        out.write(size);
+        for (int k = 0; k < size; k++)
+            out.write(entries.getInt(k << 2));
+    }
+
+    /**
+     * Writes a snapshot of this dictionary to the output, to be used with <em>map</em>.
+     * @param out the output
+     */
+    public void writeSnapshot(BitWriter out) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 * table.length());
+        BitWriter slots = new BitWriter(bytes);
+        table.write(slots);
+        slots.flush();
+        byte[] slotBytes = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(slotBytes, 0, slotBytes.length);
+
+        out.write(SNAPSHOT_MAGIC);
+        out.write(id);
+        out.write(size);
+        out.write(table.length());
+        out.write((int) crc.getValue());
+        out.write(0);
+        for (int k = 0; k < size; k++)
+            out.write(entries.getInt(k << 2));
+        if (size % 2 == 1) out.write(0);
+        out.write(slotBytes, 0, slotBytes.length);
+    }
+
+    /**
+     * Maps a dictionary snapshot written by <em>writeSnapshot</em> into memory
+     * and uses it in place. The map stays valid after the file is closed.
+     * The header and entries are checked now, in time linear in the number
+     * of phrases; the table is checked when the first encoder uses it.
+     * @param file the snapshot file
+     * @return the dictionary
+     * @throws RuntimeException if the file does not hold a valid snapshot
+     */
+    public static LzwDictionary map(FileChannel file) {
+        try {
+            long length = file.size();
+            if (length < SNAPSHOT_HEADER || length > Integer.MAX_VALUE) throw new RuntimeException("Not an LZW dictionary snapshot");
+            ByteBuffer bb = file.map(FileChannel.MapMode.READ_ONLY, 0, length).order(ByteOrder.BIG_ENDIAN);
+            if (bb.getInt(0) != SNAPSHOT_MAGIC) throw new RuntimeException("Not an LZW dictionary snapshot");
+            int id = bb.getInt(4);
+            int size = bb.getInt(8);
+            int slots = bb.getInt(12);
+            int tableCrc = bb.getInt(16);
+            if (size < 0 || size > MAX_CODES - R - 1 || slots < 0 || slots > 2 << 24)
+                throw new RuntimeException("Corrupt LZW dictionary snapshot");
+            long tableOffset = SNAPSHOT_HEADER + 8 * ((size + 1) / 2);
+            if (length != tableOffset + 8L * slots) throw new RuntimeException("Corrupt LZW dictionary snapshot");
+
+            ByteBuffer entries = slice(bb, SNAPSHOT_HEADER, 4 * size);
+            ByteBuffer slotBytes = slice(bb, (int) tableOffset, 8 * slots);
+            if (id(entries) != id) throw new RuntimeException("Corrupt LZW dictionary snapshot: checksum mismatch");
+            int maxLength = check(entries, size);
+            return new LzwDictionary(entries, slotBytes, tableCrc, size, id, maxLength);
+        }
+        catch (IllegalArgumentException e) {
+            throw new RuntimeException("Corrupt LZW dictionary snapshot: " + e.getMessage());
+        }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+
+    // the read-only big-endian bytes [offset, offset + length) of bb
+    private static ByteBuffer slice(ByteBuffer bb, int offset, int length) {
+        ByteBuffer slice = bb.duplicate();
+        slice.position(offset).limit(offset + length);
+        return slice.slice().asReadOnlyBuffer().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Reads a dictionary file or maps a snapshot, whichever the file holds.
+     * @param file the file
+     * @return the dictionary
+     * @throws RuntimeException if the file holds neither
+     */
+    public static LzwDictionary open(FileChannel file) {
+        try {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            if (file.read(magic, 0) == 4 && magic.getInt(0) == SNAPSHOT_MAGIC) return map(file);
+            return read(new BitReader(Channels.newInputStream(file.position(0))));
+        }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+
+    /**
+     * Unit tests the <tt>LzwDictionary</tt> data type: trains a dictionary
+     * on zeros, whose longest phrase is far longer than the encoder's first
+     * read, and round-trips random bytes followed by zeros, so that a long
+     * phrase straddles a refill of the encoder's lookahead, with each kind
+     * of encoder codebook and with and without blocks.
+     */
+    public static void main(String[] args) {
+        byte[] zeros = new byte[1 << 20];
+        LzwDictionary dictionary = train(new BitReader(new ByteArrayInputStream(zeros)), 4096);
+        StdOut.println("longest phrase: " + dictionary.maxLength() + " bytes");
+
+        byte[] data = new byte[8184 + 65536];
+        byte[] random = new byte[8184];
+        new Random(1).nextBytes(random);
+        System.arraycopy(random, 0, data, 0, random.length);
+
+        for (int blockSize : new int[] { 0, 1 << 16 }) {
+            for (boolean hashed : new boolean[] { true, false }) {
+                LzwHeader header = new LzwHeader('n', 9, 16, LzwHeader.CHECKSUM_CRC32, blockSize, dictionary);
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                MyLZW.compress(header, hashed, new BitReader(new ByteArrayInputStream(data)),
+                               new BitWriter(compressed));
+                ByteArrayOutputStream expanded = new ByteArrayOutputStream();
+                MyLZW.expand(new BitReader(new ByteArrayInputStream(compressed.toByteArray())),
+                             new BitWriter(expanded), dictionary);
+                String name = (hashed ? "table" : "tst") + ", block size " + blockSize;
+                if (!Arrays.equals(data, expanded.toByteArray()))
+                    throw new RuntimeException("Round trip failed: " + name);
+                StdOut.println("round trip ok: " + name);
+            }
+        }
+    }
+}
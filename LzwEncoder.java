@@ -0,0 +1,351 @@
+/*************************************************************************
+ *  Compilation:  javac LzwEncoder.java
+ *  Dependencies: BitReader.java BitWriter.java LookaheadBuffer.java
+ *                CodeTable.java ArrayTST.java LeafLru.java LzwDictionary.java
+ *
+ *  Reusable variable-width LZW compressor.
+ *
+ *************************************************************************/
+
+import java.util.zip.Checksum;
+
+/**
+ *  The <tt>LzwEncoder</tt> class compresses a stream of bytes with
+ *  variable-width LZW. Codewords start <em>minWidth</em> bits wide and grow
+ *  by one bit each time the codebook fills, up to <em>maxWidth</em> bits.
+ *  Whether the codebook is reset to the single-byte codewords once it is
+ *  full at <em>maxWidth</em> is decided by a {@link CodebookPolicy}, given
+ *  directly or named by a reset mode: <tt>'n'</tt> never resets, <tt>'r'</tt>
+ *  always resets, <tt>'m'</tt> and <tt>'w'</tt> reset when the
+ *  compression ratio falls, and <tt>'l'</tt> never resets but recycles the
+ *  codewords of least recently used leaf phrases, tracked by a {@link LeafLru}.
+ *  <p>
+ *  An encoder owns its configuration and its dictionary, which is sized for
+ *  <em>maxWidth</em> (at most 24 bits; the hashed dictionary is kept off
+ *  the Java heap) when the encoder is created and only cleared by
+ *  <em>reset</em>, so one encoder can compress any number of streams without
+ *  reallocating. An {@link LzwDictionary} seeds the codebook with trained
+ *  phrases after EOF, which are looked up in the dictionary's own shared
+ *  table before the encoder's, survive every reset, and codewords start
+ *  wide enough to code them.
+ *  Encoders are not thread-safe; use one per thread.
+ *  The output must be expanded by an {@link LzwDecoder} with the same configuration.
+ *  Width changes, full codebooks and resets are reported through {@link LzwEvents}.
+ */
+public class LzwEncoder {
+    private static final int R = 256;       // number of input chars, and codeword for EOF
+
+    private final CodebookPolicy policy;    // what to do when the codebook is full
+    private final int minWidth;             // initial codeword width
+    private final int maxWidth;             // maximum codeword width
+    private final LzwDictionary dictionary; // phrases seeded after EOF, or null
+    private final int first;                // first codeword after EOF and the dictionary
+    private final int startWidth;           // codeword width after a reset
+    private final CodeTable table;          // dictionary, or null if using st
+    private final ArrayTST st;              // dictionary, or null if using table
+    private final ArrayTST.Match match = new ArrayTST.Match();
+    private final LeafLru lru;              // order to recycle codewords in, or null
+
+    private int W;                          // current codeword width
+    private int L;                          // number of codewords = 2^W
+    private int code;                       // next available codeword
+    private long uncomp;                    // bits read so far
+    private long comp;                      // bits written so far
+
+    private LzwEvents.Segment segment;      // event timing the current segment
+    private long segmentUncomp;             // uncomp when the segment began
+    private long segmentComp;               // comp when the segment began
+    private boolean filled;                 // has the codebook filled in this segment?
+
+    /**
+     * Initializes an encoder with the given reset mode and 9 to 16 bit codewords.
+     * @param mode the reset mode, one of <tt>'n'</tt>, <tt>'r'</tt>, <tt>'m'</tt>, <tt>'w'</tt> or <tt>'l'</tt>
+     * @throws IllegalArgumentException if <tt>mode</tt> is not a reset mode
+     */
+    public LzwEncoder(char mode) {
+        this(mode, 9, 16, true);
+    }
+
+    /**
+     * Initializes an encoder with the built-in policy for a reset mode.
+     * @param mode the reset mode, one of <tt>'n'</tt>, <tt>'r'</tt>, <tt>'m'</tt>, <tt>'w'</tt> or <tt>'l'</tt>
+     * @param minWidth the initial codeword width
+     * @param maxWidth the maximum codeword width
+     * @param hashed use a {@link CodeTable} dictionary if <tt>true</tt>,
+     *     and an {@link ArrayTST} if <tt>false</tt>
+     * @throws IllegalArgumentException if <tt>mode</tt> is not a reset mode
+     * @throws IllegalArgumentException unless 9 &le; <tt>minWidth</tt> &le;
+     *     <tt>maxWidth</tt> &le; 24
+     */
+    public LzwEncoder(char mode, int minWidth, int maxWidth, boolean hashed) {
+        this(CodebookPolicy.forMode(mode), minWidth, maxWidth, hashed);
+    }
+
+    /**
+     * Initializes an encoder.
+     * @param policy decides when to clear the full codebook; not shared with other coders
+     * @param minWidth the initial codeword width
+     * @param maxWidth the maximum codeword width
+     * @param hashed use a {@link CodeTable} dictionary if <tt>true</tt>,
+     *     and an {@link ArrayTST} if <tt>false</tt>
+     * @throws IllegalArgumentException unless 9 &le; <tt>minWidth</tt> &le;
+     *     <tt>maxWidth</tt> &le; 24
+     * @throws IllegalArgumentException if the policy recycles codewords and
+     *     <tt>hashed</tt> is <tt>false</tt>
+     */
+    public LzwEncoder(CodebookPolicy policy, int minWidth, int maxWidth, boolean hashed) {
+        this(policy, minWidth, maxWidth, hashed, null);
+    }
+
+    /**
+     * Initializes an encoder whose codebook is seeded with the phrases of a dictionary.
+     * @param policy decides when to clear the full codebook; not shared with other coders
+     * @param minWidth the initial codeword width, raised if needed to code the dictionary
+     * @param maxWidth the maximum codeword width
+     * @param hashed use a {@link CodeTable} dictionary if <tt>true</tt>,
+     *     and an {@link ArrayTST} if <tt>false</tt>
+     * @param dictionary the phrases to seed the codebook with, or <tt>null</tt>
+     * @throws IllegalArgumentException unless 9 &le; <tt>minWidth</tt> &le;
+     *     <tt>maxWidth</tt> &le; 24
+     * @throws IllegalArgumentException if the policy recycles codewords and
+     *     <tt>hashed</tt> is <tt>false</tt>
+     * @throws IllegalArgumentException if the dictionary does not fit in
+     *     <tt>maxWidth</tt>-bit codewords
+     * @throws RuntimeException if the dictionary is a mapped snapshot whose
+     *     table does not match its checksum
+     */
+    public LzwEncoder(CodebookPolicy policy, int minWidth, int maxWidth, boolean hashed,
+                      LzwDictionary dictionary) {
+        if (policy == null) throw new NullPointerException();
+        if (minWidth < 9 || minWidth > maxWidth || maxWidth > 24)
+            throw new IllegalArgumentException("Illegal codeword widths " + minWidth + " to " + maxWidth);
+        if (policy.recycles() && !hashed)
+            throw new IllegalArgumentException("Recycling codewords needs the hashed dictionary");
+        this.first = (dictionary == null) ? R+1 : dictionary.end();
+        if (first > 1 << maxWidth)
+            throw new IllegalArgumentException("Dictionary does not fit in " + maxWidth + "-bit codewords");
+        if (dictionary != null) dictionary.checkTable();
+        this.policy = policy;
+        this.minWidth = minWidth;
+        this.maxWidth = maxWidth;
+        this.dictionary = dictionary;
+        this.startWidth = startWidth(minWidth, first);
+        this.table = hashed ? new CodeTable(1 << maxWidth) : null;
+        this.st = hashed ? null : new ArrayTST(Math.min(1 << maxWidth, 1 << 16));
+        this.lru = policy.recycles() ? new LeafLru(first, 1 << maxWidth) : null;
+        reset();
+    }
+
+    /**
+     * Returns the codeword width after a reset: the smallest width of at
+     * least <tt>minWidth</tt> bits that can code every codeword below <tt>first</tt>.
+     * @param minWidth the initial codeword width
+     * @param first the first codeword after EOF and the dictionary
+     * @return the codeword width after a reset
+     */
+    static int startWidth(int minWidth, int first) {
+        int W = minWidth;
+        while (1 << W < first) W++;
+        return W;
+    }
+
+    /**
+     * Returns the codebook policy.
+     * @return the codebook policy
+     */
+    public CodebookPolicy policy() {
+        return policy;
+    }
+
+    /**
+     * Returns the dictionary seeding the codebook.
+     * @return the dictionary, or <tt>null</tt>
+     */
+    public LzwDictionary dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Returns the initial codeword width.
+     * @return the initial codeword width
+     */
+    public int minWidth() {
+        return minWidth;
+    }
+
+    /**
+     * Returns the maximum codeword width.
+     * @return the maximum codeword width
+     */
+    public int maxWidth() {
+        return maxWidth;
+    }
+
+    /**
+     * Clears the codebook back to the single-byte codewords and any seeded
+     * phrases, and resets the codeword width and ratio statistics, reusing
+     * the codebook arrays.
+     */
+    public void reset() {
+        clearCodebook();
+        uncomp = 0;
+        comp = 0;
+        policy.clear();
+    }
+
+    // drop all codewords after the dictionary
+    private void clearCodebook() {
+        if (lru != null) lru.clear();
+        if (table != null) table.clear();
+        else if (st.size() == 0 || code != first) { // else nothing was added since the last clear
+            st.clear();
+            seed(new byte[1], 0, R-1);
+            for (int c = R+1; c < first; c++) {
+                byte[] phrase = dictionary.bytes(c);
+                st.put(phrase, 0, phrase.length, c);
+            }
+        }
+        code = first;
+        W = startWidth;
+        L = 1 << W;
+    }
+
+    // put the single bytes lo..hi in st, middle first, so the siblings at
+    // the root form a balanced tree rather than a list
+    private void seed(byte[] b, int lo, int hi) {
+        if (lo > hi) return;
+        int mid = (lo + hi) >>> 1;
+        b[0] = (byte) mid;
+        st.put(b, 0, 1, mid);
+        seed(b, lo, mid - 1);
+        seed(b, mid + 1, hi);
+    }
+
+    /**
+     * Compresses the bytes of <tt>in</tt> to <tt>out</tt>, ending with the
+     * EOF codeword, and flushes <tt>out</tt>. The encoder is reset first.
+     * @param in the uncompressed input
+     * @param out the compressed output
+     */
+    public void compress(BitReader in, BitWriter out) {
+        compress(in, out, null);
+    }
+
+    /**
+     * Compresses the bytes of <tt>in</tt> to <tt>out</tt>, ending with the
+     * EOF codeword, and flushes <tt>out</tt>. The encoder is reset first.
+     * @param in the uncompressed input
+     * @param out the compressed output
+     * @param sum if not <tt>null</tt>, updated with every byte of the input
+     */
+    public void compress(BitReader in, BitWriter out, Checksum sum) {
+        reset();
+        beginSegment();
+        LookaheadBuffer input = new LookaheadBuffer(in);
+        // longest key in the codebook, plus the char that extends it; a match
+        // cut short by the end of the window would skip an add the decoder makes
+        int lookahead = (dictionary == null) ? 2 : dictionary.maxLength() + 1;
+
+        while (input.fill(lookahead) > 0) {
+            // find max prefix match s, with codeword s and length t
+            int t;
+            int s;
+            if (table != null) {
+                s = input.byteAt(0);
+                for (t = 1; t < input.length(); t++) {
+                    int next = get(s, input.byteAt(t));
+                    if (next == -1) break;
+                    s = next;
+                }
+            }
+            else {
+                t = st.longestPrefixOf(input.array(), input.offset(), input.offset() + input.length(), match);
+                s = match.value();
+            }
+            out.write(s, W);
+            uncomp += 8*t;
+            comp += W;
+
+            // same codebook step the decoder takes after reading s
+            boolean cleared = false;
+            if (code == L) {
+                if (W < maxWidth) {
+                    W++;
+                    L <<= 1;
+                    LzwEvents.widthChange("compress", W, (uncomp - segmentUncomp) / 8);
+                }
+                else cleared = full();
+            }
+            if (lru != null) lru.used(s);
+
+            // add s plus the next char to the codebook, under the next free
+            // codeword or one recycled from the least recently used leaf
+            if (t < input.length() && !cleared) {
+                int next = (code < L) ? code : recycle(s);
+                if (next == code) code++;
+                if (next != -1) {
+                    if (table != null) table.put(s, input.byteAt(t), next);
+                    else               st.insertChild(match, input.byteAt(t), next);
+                    if (lru != null) lru.added(next, s, input.byteAt(t));
+                }
+            }
+            if (sum != null) sum.update(input.array(), input.offset(), t);
+            if (t + 2 > lookahead) lookahead = t + 2;
+            input.skip(t);
+        }
+        out.write(R, W);
+        comp += W;
+        endSegment(false);
+        out.flush();
+    }
+
+    // code of the phrase s extended by b, in the dictionary or the table, or -1;
+    // only a phrase whose prefix is in the dictionary can be in the dictionary
+    private int get(int s, int b) {
+        if (dictionary != null && s < first) {
+            int next = dictionary.get(s, b);
+            if (next != -1) return next;
+        }
+        return table.get(s, b);
+    }
+
+    // drop the least recently used leaf, unless it is the phrase about to be
+    // extended, and return its codeword, or -1 if there is none to recycle
+    private int recycle(int s) {
+        if (lru == null) return -1;
+        int victim = lru.victim();
+        if (victim == -1 || victim == s) return -1;
+        lru.evict(victim);
+        table.remove(lru.prefix(victim), lru.suffix(victim));
+        return victim;
+    }
+
+    // start timing a segment of the codebook
+    private void beginSegment() {
+        segment = LzwEvents.beginSegment();
+        segmentUncomp = uncomp;
+        segmentComp = comp;
+        filled = false;
+    }
+
+    // end the current segment, by a reset or at the end of the stream
+    private void endSegment(boolean reset) {
+        LzwEvents.endSegment(segment, "compress", W, (uncomp - segmentUncomp) / 8,
+                             (comp - segmentComp + 7) / 8, reset);
+    }
+
+    // apply the policy to a full codebook; return true if it was cleared
+    private boolean full() {
+        if (!filled) {
+            filled = true;
+            LzwEvents.codebookFull("compress", policy, (double) uncomp / comp);
+        }
+        if (!policy.full(uncomp, comp)) return false;
+        LzwEvents.codebookReset("compress", policy, (double) uncomp / comp);
+        endSegment(true);
+        clearCodebook();
+        policy.clear();
+        beginSegment();
+        return true;
+    }
+}
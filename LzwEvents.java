@@ -0,0 +1,323 @@
+/*************************************************************************
+ *  Compilation:  javac LzwEvents.java
+ *
+ *  Java Flight Recorder events and running counters for the codebook
+ *  lifecycle of LzwEncoder and LzwDecoder.
+ *
+ *************************************************************************/
+
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ *  The <tt>LzwEvents</tt> class defines the flight recorder events emitted
+ *  by {@link LzwEncoder} and {@link LzwDecoder}, and keeps process-wide
+ *  counters of the same occurrences:
+ *  <ul>
+ *  <li><tt>lzw.Segment</tt>: one run of the codebook from empty to a reset
+ *      or the end of the stream, with its duration and bytes in and out
+ *  <li><tt>lzw.WidthChange</tt>: the codeword width grew by one bit
+ *  <li><tt>lzw.CodebookFull</tt>: the codebook filled at the maximum width
+ *  <li><tt>lzw.CodebookReset</tt>: the codebook policy cleared the codebook,
+ *      with the ratio at the time
+ *  <li><tt>lzw.Counters</tt>: the counters, once per second
+ *  </ul>
+ *  All of these happen at most a few times per codebook, never per
+ *  codeword, so the encode and decode loops do no extra work per symbol.
+ *  Events are only created while the flight recorder is running. Record
+ *  them with, for example, <tt>java -Xlog:jfr+startup=off
+ *  -XX:StartFlightRecording:filename=lzw.jfr MyLZW - m &lt; input.txt</tt>
+ *  (the log option keeps the recorder's startup message out of standard output).
+ */
+public final class LzwEvents {
+    private static final LongAdder SEGMENTS = new LongAdder();
+    private static final LongAdder WIDTH_CHANGES = new LongAdder();
+    private static final LongAdder FULLS = new LongAdder();
+    private static final LongAdder RESETS = new LongAdder();
+    private static final LongAdder BYTES_IN = new LongAdder();
+    private static final LongAdder BYTES_OUT = new LongAdder();
+
+    private static volatile boolean registered; // is the Counters event registered?
+
+    // don't instantiate
+    private LzwEvents() { }
+
+    // is the flight recorder running? The event classes are only loaded once
+    // it is, because loading an event class starts up the recorder's machinery,
+    // which would add most of a second to every run
+    private static boolean recording() {
+        if (!FlightRecorder.isInitialized()) return false;
+        if (!registered) register();
+        return true;
+    }
+
+    // register the periodic Counters event
+    private static synchronized void register() {
+        if (registered) return;
+        FlightRecorder.addPeriodicEvent(Counters.class, () -> {
+            Counters event = new Counters();
+            event.segments = SEGMENTS.sum();
+            event.widthChanges = WIDTH_CHANGES.sum();
+            event.fulls = FULLS.sum();
+            event.resets = RESETS.sum();
+            event.bytesIn = BYTES_IN.sum();
+            event.bytesOut = BYTES_OUT.sum();
+            event.commit();
+        });
+        registered = true;
+    }
+
+    /**
+     * One run of the codebook, from empty until it is reset or the stream ends.
+     */
+    @Name("lzw.Segment")
+    @Label("LZW Segment")
+    @Category("LZW")
+    @Description("Codewords coded between codebook resets")
+    @StackTrace(false)
+    static class Segment extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Final Width")
+        @Description("Codeword width when the segment ended")
+        int width;
+
+        @Label("Bytes In")
+        @DataAmount
+        long bytesIn;
+
+        @Label("Bytes Out")
+        @DataAmount
+        long bytesOut;
+
+        @Label("Reset")
+        @Description("Whether the segment ended with a codebook reset rather than the end of the stream")
+        boolean reset;
+    }
+
+    @Name("lzw.WidthChange")
+    @Label("LZW Width Change")
+    @Category("LZW")
+    @StackTrace(false)
+    static class WidthChange extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Width")
+        @Description("New codeword width")
+        int width;
+
+        @Label("Uncompressed Offset")
+        @Description("Uncompressed bytes coded in the segment so far")
+        @DataAmount
+        long offset;
+    }
+
+    @Name("lzw.CodebookFull")
+    @Label("LZW Codebook Full")
+    @Category("LZW")
+    @StackTrace(false)
+    static class CodebookFull extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Policy")
+        String policy;
+
+        @Label("Ratio")
+        @Description("Compression ratio of the stream when the codebook filled")
+        double ratio;
+    }
+
+    @Name("lzw.CodebookReset")
+    @Label("LZW Codebook Reset")
+    @Category("LZW")
+    @StackTrace(false)
+    static class CodebookReset extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Policy")
+        String policy;
+
+        @Label("Ratio")
+        @Description("Compression ratio of the stream at the reset")
+        double ratio;
+    }
+
+    @Name("lzw.Counters")
+    @Label("LZW Counters")
+    @Category("LZW")
+    @Period("1 s")
+    @StackTrace(false)
+    static class Counters extends Event {
+        @Label("Segments")
+        long segments;
+
+        @Label("Width Changes")
+        long widthChanges;
+
+        @Label("Codebook Fulls")
+        long fulls;
+
+        @Label("Codebook Resets")
+        long resets;
+
+        @Label("Bytes In")
+        @DataAmount
+        long bytesIn;
+
+        @Label("Bytes Out")
+        @DataAmount
+        long bytesOut;
+    }
+
+    /**
+     * Starts timing a segment.
+     * @return the segment event, to pass to <tt>endSegment</tt>, or
+     *     <tt>null</tt> if the flight recorder is not running
+     */
+    static Segment beginSegment() {
+        if (!recording()) return null;
+        Segment event = new Segment();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends a segment, counting its bytes and committing its event.
+     * @param event the event returned by <tt>beginSegment</tt>, or <tt>null</tt>
+     * @param operation <tt>"compress"</tt> or <tt>"expand"</tt>
+     * @param width the codeword width at the end of the segment
+     * @param bytesIn bytes read in the segment
+     * @param bytesOut bytes written in the segment
+     * @param reset whether the segment ended with a reset
+     */
+    static void endSegment(Segment event, String operation, int width, long bytesIn, long bytesOut, boolean reset) {
+        SEGMENTS.increment();
+        BYTES_IN.add(bytesIn);
+        BYTES_OUT.add(bytesOut);
+        if (event == null) return;
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.width = width;
+            event.bytesIn = bytesIn;
+            event.bytesOut = bytesOut;
+            event.reset = reset;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records that the codeword width grew.
+     * @param operation <tt>"compress"</tt> or <tt>"expand"</tt>
+     * @param width the new width
+     * @param offset uncompressed bytes coded in the segment so far
+     */
+    static void widthChange(String operation, int width, long offset) {
+        WIDTH_CHANGES.increment();
+        if (!recording()) return;
+        WidthChange event = new WidthChange();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.width = width;
+            event.offset = offset;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records that the codebook filled at the maximum width.
+     * @param operation <tt>"compress"</tt> or <tt>"expand"</tt>
+     * @param policy the codebook policy
+     * @param ratio the compression ratio so far
+     */
+    static void codebookFull(String operation, CodebookPolicy policy, double ratio) {
+        FULLS.increment();
+        if (!recording()) return;
+        CodebookFull event = new CodebookFull();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.policy = policy.toString();
+            event.ratio = ratio;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records that the codebook policy cleared the codebook.
+     * @param operation <tt>"compress"</tt> or <tt>"expand"</tt>
+     * @param policy the codebook policy
+     * @param ratio the compression ratio so far
+     */
+    static void codebookReset(String operation, CodebookPolicy policy, double ratio) {
+        RESETS.increment();
+        if (!recording()) return;
+        CodebookReset event = new CodebookReset();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.policy = policy.toString();
+            event.ratio = ratio;
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the number of segments ended so far in this process.
+     * @return the number of segments ended so far
+     */
+    public static long segments() {
+        return SEGMENTS.sum();
+    }
+
+    /**
+     * Returns the number of codeword width changes so far in this process.
+     * @return the number of codeword width changes so far
+     */
+    public static long widthChanges() {
+        return WIDTH_CHANGES.sum();
+    }
+
+    /**
+     * Returns the number of times a codebook filled so far in this process.
+     * @return the number of times a codebook filled so far
+     */
+    public static long fulls() {
+        return FULLS.sum();
+    }
+
+    /**
+     * Returns the number of codebook resets so far in this process.
+     * @return the number of codebook resets so far
+     */
+    public static long resets() {
+        return RESETS.sum();
+    }
+
+    /**
+     * Returns the number of bytes read by ended segments so far in this process.
+     * @return the number of bytes read so far
+     */
+    public static long bytesIn() {
+        return BYTES_IN.sum();
+    }
+
+    /**
+     * Returns the number of bytes written by ended segments so far in this process.
+     * @return the number of bytes written so far
+     */
+    public static long bytesOut() {
+        return BYTES_OUT.sum();
+    }
+}
@@ -0,0 +1,255 @@
+/*************************************************************************
+ *  Compilation:  javac LzwHeader.java
+ *  Dependencies: BitReader.java BitWriter.java LzwDictionary.java
+ *
+ *  The self-describing header at the start of every MyLZW stream.
+ *
+ *************************************************************************/
+
+/**
+ *  The <tt>LzwHeader</tt> class represents the 13- or 17-byte header that
+ *  starts a compressed stream and records everything needed to expand it:
+ *  <pre>
+ *     magic      4 bytes   "LZW!"
+ *     version    1 byte    1, or 2 if the stream uses a dictionary
+ *     mode       1 byte    reset mode: 'n', 'r', 'm', 'w' or 'l', see CodebookPolicy
+ *     minWidth   1 byte    initial codeword width
+ *     maxWidth   1 byte    maximum codeword width, at most 24
+ *     checksum   1 byte    checksum type: 0 = none, 1 = CRC-32
+ *     blockSize  4 bytes   uncompressed block size, or 0 if not blocked
+ *     dictionary 4 bytes   ID of the {@link LzwDictionary}, only in version 2
+ *  </pre>
+ *  Multi-byte fields are big-endian. In an unblocked stream the header is
+ *  followed by the codewords and, with a CRC-32 checksum, from the next byte
+ *  boundary by the 32-bit CRC of the uncompressed data. A blocked stream is
+ *  followed by one frame per block and a block index, as described in
+ *  {@link LzwBlocks} and {@link LzwIndex}.
+ *  <p>
+ *  A header holds the dictionary itself, not just its ID, so the coders it
+ *  creates are seeded with it; a stream that uses a dictionary can only be
+ *  read by passing the dictionary with that ID.
+ */
+public class LzwHeader {
+    /**
+     * The 4 bytes "LZW!" that start every stream.
+     */
+    public static final int MAGIC = 0x4C5A5721;
+
+    /**
+     * The format version written by this class for streams without a dictionary.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The format version written by this class for streams with a dictionary.
+     */
+    public static final int VERSION_DICTIONARY = 2;
+
+    /**
+     * The length in bytes of a header without a dictionary; one with a
+     * dictionary is 4 bytes longer.
+     */
+    public static final int SIZE = 13;
+
+    /**
+     * Checksum type for streams without a checksum.
+     */
+    public static final int CHECKSUM_NONE = 0;
+
+    /**
+     * Checksum type for streams ending with the CRC-32 of the uncompressed data.
+     */
+    public static final int CHECKSUM_CRC32 = 1;
+
+    private final char mode;        // reset mode
+    private final int minWidth;     // initial codeword width
+    private final int maxWidth;     // maximum codeword width
+    private final int checksum;     // checksum type
+    private final int blockSize;    // uncompressed block size, or 0
+    private final LzwDictionary dictionary; // seeds the codebook, or null
+
+    /**
+     * Initializes a header for an unblocked stream with 9 to 16 bit codewords
+     * and no checksum.
+     * @param mode the reset mode, one of <tt>'n'</tt>, <tt>'r'</tt>, <tt>'m'</tt>, <tt>'w'</tt> or <tt>'l'</tt>
+     * @throws IllegalArgumentException if <tt>mode</tt> is not a reset mode
+     */
+    public LzwHeader(char mode) {
+        this(mode, 9, 16, CHECKSUM_NONE, 0);
+    }
+
+    /**
+     * Initializes a header.
+     * @param mode the reset mode, one of <tt>'n'</tt>, <tt>'r'</tt>, <tt>'m'</tt>, <tt>'w'</tt> or <tt>'l'</tt>
+     * @param minWidth the initial codeword width
+     * @param maxWidth the maximum codeword width
+     * @param checksum the checksum type
+     * @param blockSize the uncompressed block size, or 0 if not blocked
+     * @throws IllegalArgumentException if any field is out of range
+     */
+    public LzwHeader(char mode, int minWidth, int maxWidth, int checksum, int blockSize) {
+        this(mode, minWidth, maxWidth, checksum, blockSize, null);
+    }
+
+    /**
+     * Initializes a header for a stream whose codebook is seeded with a dictionary.
+     * @param mode the reset mode, one of <tt>'n'</tt>, <tt>'r'</tt>, <tt>'m'</tt>, <tt>'w'</tt> or <tt>'l'</tt>
+     * @param minWidth the initial codeword width
+     * @param maxWidth the maximum codeword width
+     * @param checksum the checksum type
+     * @param blockSize the uncompressed block size, or 0 if not blocked
+     * @param dictionary the dictionary, or <tt>null</tt>
+     * @throws IllegalArgumentException if any field is out of range, or the
+     *     dictionary does not fit in <tt>maxWidth</tt>-bit codewords
+     */
+    public LzwHeader(char mode, int minWidth, int maxWidth, int checksum, int blockSize,
+                     LzwDictionary dictionary) {
+        CodebookPolicy.forMode(mode);   // throws if mode is not a reset mode
+        if (minWidth < 9 || minWidth > maxWidth || maxWidth > 24)
+            throw new IllegalArgumentException("Illegal codeword widths " + minWidth + " to " + maxWidth);
+        if (dictionary != null && dictionary.end() > 1 << maxWidth)
+            throw new IllegalArgumentException("Dictionary does not fit in " + maxWidth + "-bit codewords");
+        if (checksum != CHECKSUM_NONE && checksum != CHECKSUM_CRC32)
+            throw new IllegalArgumentException("Illegal checksum type " + checksum);
+        if (blockSize < 0) throw new IllegalArgumentException("Illegal block size " + blockSize);
+        this.mode = mode;
+        this.minWidth = minWidth;
+        this.maxWidth = maxWidth;
+        this.checksum = checksum;
+        this.blockSize = blockSize;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Reads a header from the input.
+     * @param in the input
+     * @return the header
+     * @throws RuntimeException if the input does not start with a valid header
+     *     or the stream uses a dictionary
+     */
+    public static LzwHeader read(BitReader in) {
+        return read(in, null);
+    }
+
+    /**
+     * Reads a header from the input of a stream that may use the given dictionary.
+     * @param in the input
+     * @param dictionary the dictionary, or <tt>null</tt>; ignored if the
+     *     stream does not use a dictionary
+     * @return the header
+     * @throws RuntimeException if the input does not start with a valid header
+     *     or the stream uses a dictionary other than <tt>dictionary</tt>
+     */
+    public static LzwHeader read(BitReader in, LzwDictionary dictionary) {
+        if (in.readInt() != MAGIC) throw new RuntimeException("Not an LZW stream");
+        int version = in.readChar();
+        if (version != VERSION && version != VERSION_DICTIONARY)
+            throw new RuntimeException("Unsupported LZW stream version " + version);
+        char mode     = in.readChar();
+        int minWidth  = in.readChar();
+        int maxWidth  = in.readChar();
+        int checksum  = in.readChar();
+        int blockSize = in.readInt();
+        if (version == VERSION) dictionary = null;
+        else {
+            int id = in.readInt();
+            if (dictionary == null || dictionary.id() != id)
+                throw new RuntimeException(String.format("Stream needs LZW dictionary %08x", id));
+        }
+        try {
+            return new LzwHeader(mode, minWidth, maxWidth, checksum, blockSize, dictionary);
+        }
+        catch (IllegalArgumentException e) {
+            throw new RuntimeException("Corrupt LZW header: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes this header to the output.
+     * @param out the output
+     */
+    public void write(BitWriter out) {
+        out.write(MAGIC);
+        out.write((dictionary == null) ? VERSION : VERSION_DICTIONARY, 8);
+        out.write(mode);
+        out.write(minWidth, 8);
+        out.write(maxWidth, 8);
+        out.write(checksum, 8);
+        out.write(blockSize);
+        if (dictionary != null) out.write(dictionary.id());
+    }
+
+    /**
+     * Returns the length of this header in bytes.
+     * @return the length of this header in bytes
+     */
+    public int size() {
+        return (dictionary == null) ? SIZE : SIZE + 4;
+    }
+
+    /**
+     * Returns a new encoder configured by this header.
+     * @param hashed use a {@link CodeTable} dictionary if <tt>true</tt>,
+     *     and an {@link ArrayTST} if <tt>false</tt>
+     * @return a new encoder configured by this header
+     */
+    public LzwEncoder newEncoder(boolean hashed) {
+        return new LzwEncoder(CodebookPolicy.forMode(mode), minWidth, maxWidth, hashed, dictionary);
+    }
+
+    /**
+     * Returns a new decoder configured by this header.
+     * @return a new decoder configured by this header
+     */
+    public LzwDecoder newDecoder() {
+        return new LzwDecoder(CodebookPolicy.forMode(mode), minWidth, maxWidth, dictionary);
+    }
+
+    /**
+     * Returns the reset mode.
+     * @return the reset mode
+     */
+    public char mode() {
+        return mode;
+    }
+
+    /**
+     * Returns the initial codeword width.
+     * @return the initial codeword width
+     */
+    public int minWidth() {
+        return minWidth;
+    }
+
+    /**
+     * Returns the maximum codeword width.
+     * @return the maximum codeword width
+     */
+    public int maxWidth() {
+        return maxWidth;
+    }
+
+    /**
+     * Returns the checksum type.
+     * @return the checksum type
+     */
+    public int checksum() {
+        return checksum;
+    }
+
+    /**
+     * Returns the dictionary that seeds the codebook.
+     * @return the dictionary, or <tt>null</tt>
+     */
+    public LzwDictionary dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Returns the uncompressed block size.
+     * @return the uncompressed block size, or 0 if the stream is not blocked
+     */
+    public int blockSize() {
+        return blockSize;
+    }
+}
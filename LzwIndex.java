@@ -0,0 +1,208 @@
+/*************************************************************************
+ *  Compilation:  javac LzwIndex.java
+ *  Dependencies: LzwHeader.java LzwBlocks.java BitReader.java BitWriter.java
+ *
+ *  The block index at the end of a blocked MyLZW stream.
+ *
+ *************************************************************************/
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ *  The <tt>LzwIndex</tt> class represents the index of a blocked stream:
+ *  for each block, the offset of its frame from the start of the stream,
+ *  the length of its codewords, and its uncompressed length.
+ *  The index follows the zero length that ends the frames:
+ *  <pre>
+ *     count        4 bytes   number of blocks
+ *     entries     16 bytes   per block: frame offset (8), compressed length (4),
+ *                            uncompressed length (4)
+ *     offset       8 bytes   offset of count from the start of the stream
+ *     magic        4 bytes   "LZWX"
+ *  </pre>
+ *  The fixed-size trailer lets a reader with random access find the index
+ *  from the end of the stream without scanning the frames.
+ */
+public class LzwIndex {
+    /**
+     * The 4 bytes "LZWX" that end every blocked stream.
+     */
+    public static final int MAGIC = 0x4C5A5758;
+
+    private static final int TRAILER = 12;  // bytes of offset and magic
+
+    private long[] offset = new long[16];   // offset[k] = offset of frame k
+    private int[] compressed = new int[16]; // compressed[k] = length of codewords of block k
+    private int[] length = new int[16];     // length[k] = uncompressed length of block k
+    private long[] start = new long[17];    // start[k] = uncompressed offset of block k
+    private int N;                          // number of blocks
+
+    /**
+     * Initializes an empty index.
+     */
+    public LzwIndex() {
+    }
+
+    /**
+     * Returns the number of blocks.
+     * @return the number of blocks
+     */
+    public int size() {
+        return N;
+    }
+
+    /**
+     * Returns the offset of the frame of block <tt>k</tt> from the start of the stream.
+     * @param k the block
+     * @return the offset of the frame of block <tt>k</tt>
+     */
+    public long offset(int k) {
+        return offset[k];
+    }
+
+    /**
+     * Returns the length of the codewords of block <tt>k</tt>.
+     * @param k the block
+     * @return the length of the codewords of block <tt>k</tt>
+     */
+    public int compressedLength(int k) {
+        return compressed[k];
+    }
+
+    /**
+     * Returns the uncompressed length of block <tt>k</tt>.
+     * @param k the block
+     * @return the uncompressed length of block <tt>k</tt>
+     */
+    public int length(int k) {
+        return length[k];
+    }
+
+    /**
+     * Returns the offset of the first uncompressed byte of block <tt>k</tt>.
+     * @param k the block, or <tt>size()</tt> for the total uncompressed length
+     * @return the offset of the first uncompressed byte of block <tt>k</tt>
+     */
+    public long start(int k) {
+        return start[k];
+    }
+
+    /**
+     * Returns the block holding the uncompressed byte at offset <tt>x</tt>.
+     * @param x the offset of an uncompressed byte
+     * @return the block holding byte <tt>x</tt>
+     * @throws IndexOutOfBoundsException unless 0 &le; <tt>x</tt> &lt; <tt>start(size())</tt>
+     */
+    public int block(long x) {
+        if (x < 0 || x >= start[N]) throw new IndexOutOfBoundsException("offset " + x);
+        int k = Arrays.binarySearch(start, 0, N + 1, x);
+        return (k >= 0) ? k : -k - 2;
+    }
+
+    /**
+     * Adds a block to the end of the index.
+     * @param frameOffset the offset of the block's frame from the start of the stream
+     * @param compressedLength the length of the block's codewords
+     * @param uncompressedLength the uncompressed length of the block
+     */
+    public void add(long frameOffset, int compressedLength, int uncompressedLength) {
+        if (N == offset.length) {
+            offset = Arrays.copyOf(offset, 2*N);
+            compressed = Arrays.copyOf(compressed, 2*N);
+            length = Arrays.copyOf(length, 2*N);
+            start = Arrays.copyOf(start, 2*N + 1);
+        }
+        offset[N] = frameOffset;
+        compressed[N] = compressedLength;
+        length[N] = uncompressedLength;
+        start[N+1] = start[N] + uncompressedLength;
+        N++;
+    }
+
+    /**
+     * Writes this index and its trailer to the output.
+     * @param out the output
+     * @param indexOffset the offset of the index from the start of the stream
+     */
+    public void write(BitWriter out, long indexOffset) {
+        out.write(N);
+        for (int k = 0; k < N; k++) {
+            out.write(offset[k]);
+            out.write(compressed[k]);
+            out.write(length[k]);
+        }
+        out.write(indexOffset);
+        out.write(MAGIC);
+    }
+
+    /**
+     * Returns the number of bytes <tt>write</tt> produces.
+     * @return the number of bytes <tt>write</tt> produces
+     */
+    public long bytes() {
+        return 4 + 16L*N + TRAILER;
+    }
+
+    /**
+     * Reads the index of the blocked stream that fills the given file,
+     * using its trailer to find it. Every entry is checked against the
+     * header before it is trusted: frames must follow the header in order
+     * without overlapping and end before the index, and their lengths must
+     * be ones the stream could hold.
+     * @param in the file
+     * @param header the header read from the start of the file
+     * @return the index
+     * @throws RuntimeException if the file does not end with a valid index
+     */
+    public static LzwIndex read(FileChannel in, LzwHeader header) {
+        try {
+            long size = in.size();
+            if (size < LzwHeader.SIZE + 4 + 4 + TRAILER) throw new RuntimeException("Not a blocked LZW stream");
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER);
+            readFully(in, trailer, size - TRAILER);
+            long indexOffset = trailer.getLong(0);
+            if (trailer.getInt(8) != MAGIC || indexOffset < LzwHeader.SIZE + 4 || indexOffset > size - TRAILER - 4)
+                throw new RuntimeException("Not a blocked LZW stream");
+            BitReader reader = new BitReader(Channels.newInputStream(in.position(indexOffset)));
+            int n = reader.readInt();
+            if (n < 0 || 4 + 16L*n + TRAILER != size - indexOffset) throw new RuntimeException("Corrupt LZW index");
+            LzwIndex index = new LzwIndex();
+            long end = header.size();       // end of the frames so far
+            for (int k = 0; k < n; k++) {
+                long frameOffset = reader.readLong();
+                int compressedLength = reader.readInt();
+                int uncompressedLength = reader.readInt();
+                if (!fits(header, frameOffset, compressedLength, uncompressedLength, end, indexOffset))
+                    throw new RuntimeException("Corrupt LZW index");
+                index.add(frameOffset, compressedLength, uncompressedLength);
+                end = frameOffset + LzwBlocks.frameHeaderSize(header) + compressedLength;
+            }
+            return index;
+        }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+
+    // can a frame at the given offset, with the given lengths, lie within
+    // [from, to) of a stream with the given header? Blocks are never empty,
+    // since a zero length ends the frames, so their starts strictly increase
+    static boolean fits(LzwHeader header, long offset, int compressedLength, int uncompressedLength,
+                        long from, long to) {
+        return uncompressedLength > 0 && uncompressedLength <= header.blockSize()
+            && compressedLength >= 0 && compressedLength <= 3L * uncompressedLength + 4
+            && offset >= from && offset + LzwBlocks.frameHeaderSize(header) + compressedLength <= to;
+    }
+
+    // fill bb from the file starting at the given position
+    static void readFully(FileChannel in, ByteBuffer bb, long position) throws IOException {
+        while (bb.hasRemaining()) {
+            int n = in.read(bb, position);
+            if (n < 0) throw new RuntimeException("Truncated LZW stream");
+            position += n;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*************************************************************************
+ *  Compilation:  javac LzwInputStream.java
+ *  Dependencies: LzwHeader.java LzwDecoder.java LzwBlocks.java BitReader.java
+ *                LzwOutputStream.java MyLZW.java
+ *
+ *  An input stream filter that expands a blocked MyLZW stream as it
+ *  is read.
+ *
+ *************************************************************************/
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ *  The <tt>LzwInputStream</tt> class expands a blocked stream, as written by
+ *  {@link LzwOutputStream} or <tt>MyLZW -</tt> with a block size, like
+ *  {@link java.util.zip.GZIPInputStream}. The header is read when the
+ *  stream is created; after that each block is read and expanded only when
+ *  the bytes of the one before have all been read, so memory use is fixed
+ *  by the block size whatever the length of the stream. The stream ends at
+ *  the end of the frames; the block index is not read.
+ *  <p>
+ *  Corrupt data and checksum mismatches are reported as they are by
+ *  {@link LzwBlocks}, with a <tt>RuntimeException</tt>. Streams are not
+ *  thread-safe.
+ */
+public class LzwInputStream extends FilterInputStream {
+    private final LzwHeader header;         // header of the stream
+    private final LzwDecoder decoder;       // expands each block
+    private final BitReader reader;         // over the underlying stream
+    private final byte[] buffer;            // uncompressed bytes of the current block
+    private byte[] codewords = new byte[0]; // compressed bytes of the current block
+    private int pos;                        // next byte of buffer to read
+    private int n;                          // number of bytes in buffer
+    private boolean eof;                    // has the end of the frames been read?
+
+    /**
+     * Initializes a stream over a blocked stream and reads its header.
+     * @param in the underlying input stream
+     * @throws IOException if an I/O error occurs
+     * @throws RuntimeException if the header is invalid, the stream is not
+     *     blocked, or it uses a dictionary
+     */
+    public LzwInputStream(InputStream in) throws IOException {
+        this(in, null);
+    }
+
+    /**
+     * Initializes a stream over a blocked stream that may use the given
+     * dictionary, and reads its header.
+     * @param in the underlying input stream
+     * @param dictionary the dictionary, or <tt>null</tt>
+     * @throws IOException if an I/O error occurs
+     * @throws RuntimeException if the header is invalid, the stream is not
+     *     blocked, or it uses another dictionary
+     */
+    public LzwInputStream(InputStream in, LzwDictionary dictionary) throws IOException {
+        super(in);
+        this.reader = new BitReader(in);
+        try {
+            this.header = LzwHeader.read(reader, dictionary);
+        }
+        catch (UncheckedIOException e) { throw e.getCause(); }
+        if (header.blockSize() == 0) throw new RuntimeException("Not a blocked LZW stream");
+        this.decoder = header.newDecoder();
+        this.buffer = new byte[header.blockSize()];
+    }
+
+    /**
+     * Reads one byte.
+     * @return the byte, or -1 at the end of the stream
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public int read() throws IOException {
+        if (pos == n && !nextBlock()) return -1;
+        return buffer[pos++] & 0xff;
+    }
+
+    /**
+     * Reads up to <tt>len</tt> bytes into <tt>b</tt> starting at <tt>off</tt>,
+     * expanding the next block if the current one has been read.
+     * @param b the array
+     * @param off the offset of the first byte
+     * @param len the maximum number of bytes
+     * @return the number of bytes read, or -1 at the end of the stream
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+        if (len == 0) return 0;
+        if (pos == n && !nextBlock()) return -1;
+        int k = Math.min(len, n - pos);
+        System.arraycopy(buffer, pos, b, off, k);
+        pos += k;
+        return k;
+    }
+
+    /**
+     * Skips up to <tt>count</tt> bytes, expanding blocks as needed.
+     * @param count the maximum number of bytes to skip
+     * @return the number of bytes skipped
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public long skip(long count) throws IOException {
+        long skipped = 0;
+        while (skipped < count && (pos < n || nextBlock())) {
+            int k = (int) Math.min(count - skipped, n - pos);
+            pos += k;
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    /**
+     * Returns the number of bytes left in the current block, which can be
+     * read without expanding another.
+     * @return the number of bytes left in the current block
+     */
+    @Override
+    public int available() {
+        return n - pos;
+    }
+
+    /**
+     * Returns <tt>false</tt>; marks are not supported.
+     * @return <tt>false</tt>
+     */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    // read and expand the next frame into buffer; return false at the end of the frames
+    private boolean nextBlock() throws IOException {
+        if (eof) return false;
+        try {
+            int length = reader.readInt();
+            if (length == 0) {
+                eof = true;
+                return false;
+            }
+            int compressed = reader.readInt();
+            boolean checked = (header.checksum() == LzwHeader.CHECKSUM_CRC32);
+            int expected = checked ? reader.readInt() : 0;
+            // a byte never takes more than one 24-bit codeword, plus EOF and padding
+            if (length < 0 || length > buffer.length || compressed < 0 || compressed > 3L * length + 4)
+                throw new RuntimeException("Corrupt LZW block");
+            if (codewords.length < compressed) codewords = new byte[Math.max(compressed, 2 * codewords.length)];
+            if (reader.read(codewords, 0, compressed) != compressed) throw new RuntimeException("Truncated LZW block");
+            LzwBlocks.expand(decoder, codewords, 0, compressed, buffer, length, checked, expected);
+            pos = 0;
+            n = length;
+            return true;
+        }
+        catch (UncheckedIOException e) { throw e.getCause(); }
+    }
+
+    /**
+     * Unit tests <tt>LzwInputStream</tt> and {@link LzwOutputStream}: writes
+     * random text through an output stream in writes of random sizes, single
+     * bytes, and flushes that end blocks early, then reads it back through
+     * an input stream in reads of random sizes, single bytes and skips, and
+     * with <tt>MyLZW</tt>, with and without a dictionary.
+     */
+    public static void main(String[] args) throws IOException {
+        Random random = new Random(1);
+        byte[] data = new byte[200000];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) ('a' + Math.min(random.nextInt(32), random.nextInt(32)));
+        LzwDictionary dictionary = LzwDictionary.train(new BitReader(new ByteArrayInputStream(data)), 500);
+
+        for (LzwDictionary d : new LzwDictionary[] { null, dictionary }) {
+            LzwHeader header = new LzwHeader('n', 9, 12, LzwHeader.CHECKSUM_CRC32, 1 << 14, d);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (LzwOutputStream out = new LzwOutputStream(compressed, header, true)) {
+                for (int i = 0; i < data.length; ) {
+                    int op = random.nextInt(10);
+                    if (op == 0) out.write(data[i++]);
+                    else if (op == 1) out.flush();
+                    else {
+                        int k = Math.min(random.nextInt(40000), data.length - i);
+                        out.write(data, i, k);
+                        i += k;
+                    }
+                }
+            }
+            String name = (d == null) ? "no dictionary" : "dictionary";
+
+            ByteArrayOutputStream expanded = new ByteArrayOutputStream();
+            MyLZW.expand(new BitReader(new ByteArrayInputStream(compressed.toByteArray())),
+                         new BitWriter(expanded), d);
+            if (!Arrays.equals(data, expanded.toByteArray())) throw new RuntimeException("MyLZW expand failed: " + name);
+
+            byte[] read = new byte[data.length];
+            try (LzwInputStream in = new LzwInputStream(new ByteArrayInputStream(compressed.toByteArray()), d)) {
+                int i = 0;
+                while (i < data.length) {
+                    int op = random.nextInt(10);
+                    if (op == 0) read[i++] = (byte) in.read();
+                    else if (op == 1) {
+                        long k = in.skip(random.nextInt(100));
+                        System.arraycopy(data, i, read, i, (int) k);    // skipped bytes are not compared
+                        i += k;
+                    }
+                    else {
+                        int k = in.read(read, i, Math.min(1 + random.nextInt(40000), data.length - i));
+                        if (k <= 0) throw new RuntimeException("Early end of stream: " + name);
+                        i += k;
+                    }
+                }
+                if (in.read() != -1) throw new RuntimeException("No end of stream: " + name);
+            }
+            if (!Arrays.equals(data, read)) throw new RuntimeException("LzwInputStream failed: " + name);
+            StdOut.println("streams ok: " + name + ", " + compressed.size() + " bytes");
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*************************************************************************
+ *  Compilation:  javac LzwOutputStream.java
+ *  Dependencies: LzwHeader.java LzwEncoder.java LzwBlocks.java LzwIndex.java
+ *                BitReader.java BitWriter.java
+ *
+ *  An output stream filter that compresses everything written to it
+ *  into a blocked MyLZW stream.
+ *
+ *************************************************************************/
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ *  The <tt>LzwOutputStream</tt> class compresses the bytes written to it,
+ *  like {@link java.util.zip.GZIPOutputStream}, producing the blocked stream
+ *  described in {@link LzwBlocks}, which <tt>MyLZW +</tt> and
+ *  {@link LzwInputStream} expand.
+ *  <p>
+ *  Bytes are collected in a buffer of the header's block size and compressed
+ *  as one block, with a fresh codebook, each time the buffer fills. <em>flush</em>
+ *  also ends the current block early, so everything written so far can be
+ *  expanded by the reader on the other end of a socket, at the cost of a
+ *  block boundary. <em>finish</em> or <em>close</em> writes the end of the
+ *  frames and the block index. Memory use is fixed by the block size: the
+ *  input buffer, and an output buffer that grows to the largest compressed block.
+ *  <p>
+ *  This implementation compresses on the calling thread. Streams are not
+ *  thread-safe.
+ */
+public class LzwOutputStream extends FilterOutputStream {
+    private static final int BLOCK_SIZE = 1 << 20;  // default block size
+
+    private final LzwHeader header;         // header of the stream
+    private final LzwEncoder encoder;       // compresses each block
+    private final BitWriter writer;         // over the underlying stream
+    private final byte[] buffer;            // uncompressed bytes of the current block
+    private final Codewords codewords = new Codewords();
+    private final CRC32 crc = new CRC32();
+    private final LzwIndex index = new LzwIndex();
+    private int n;                          // number of bytes in buffer
+    private long offset;                    // bytes of the stream written so far
+    private boolean finished;               // have the end marker and index been written?
+
+    /**
+     * Initializes a stream with 9 to 16 bit codewords that never resets the
+     * codebook, 1 MiB blocks and a CRC-32 of each block, and writes its header.
+     * @param out the underlying output stream
+     */
+    public LzwOutputStream(OutputStream out) {
+        this(out, new LzwHeader('n', 9, 16, LzwHeader.CHECKSUM_CRC32, BLOCK_SIZE), true);
+    }
+
+    /**
+     * Initializes a stream as the header describes, and writes the header.
+     * @param out the underlying output stream
+     * @param header the header of the stream, with a nonzero block size
+     * @param hashed use a {@link CodeTable} dictionary if <tt>true</tt>,
+     *     and an {@link ArrayTST} if <tt>false</tt>
+     * @throws IllegalArgumentException if the header has no block size
+     */
+    public LzwOutputStream(OutputStream out, LzwHeader header, boolean hashed) {
+        super(out);
+        if (header.blockSize() == 0) throw new IllegalArgumentException("Header has no block size");
+        this.header = header;
+        this.encoder = header.newEncoder(hashed);
+        this.writer = new BitWriter(out);
+        this.buffer = new byte[header.blockSize()];
+        header.write(writer);
+        offset = header.size();
+    }
+
+    /**
+     * Writes one byte.
+     * @param b the byte, in the low 8 bits
+     * @throws IOException if the stream is finished or an I/O error occurs
+     */
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        buffer[n++] = (byte) b;
+        if (n == buffer.length) writeBlock();
+    }
+
+    /**
+     * Writes <tt>len</tt> bytes of <tt>b</tt> starting at <tt>off</tt>.
+     * @param b the bytes
+     * @param off the offset of the first byte
+     * @param len the number of bytes
+     * @throws IOException if the stream is finished or an I/O error occurs
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+        ensureOpen();
+        while (len > 0) {
+            int k = Math.min(len, buffer.length - n);
+            System.arraycopy(b, off, buffer, n, k);
+            n += k;
+            off += k;
+            len -= k;
+            if (n == buffer.length) writeBlock();
+        }
+    }
+
+    /**
+     * Compresses the bytes written since the last block as a block of their
+     * own, if there are any, and flushes the underlying stream.
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void flush() throws IOException {
+        if (!finished) {
+            if (n > 0) writeBlock();
+            uncheck(writer::flush);
+        }
+        out.flush();
+    }
+
+    /**
+     * Compresses any remaining bytes and writes the end of the frames and the
+     * block index, without closing the underlying stream. Further writes fail.
+     * @throws IOException if an I/O error occurs
+     */
+    public void finish() throws IOException {
+        if (finished) return;
+        if (n > 0) writeBlock();
+        uncheck(() -> {
+            writer.write(0);
+            index.write(writer, offset + 4);
+            writer.flush();
+        });
+        finished = true;
+    }
+
+    /**
+     * Finishes the stream and closes the underlying stream.
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    // compress buffer[0..n) and write it as one frame
+    private void writeBlock() throws IOException {
+        codewords.reset();
+        crc.reset();
+        encoder.compress(new BitReader(ByteBuffer.wrap(buffer, 0, n)), new BitWriter(codewords), crc);
+        uncheck(() -> offset = LzwBlocks.writeFrame(header, n, (int) crc.getValue(), codewords.array(),
+                                                     codewords.size(), writer, index, offset));
+        n = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) throw new IOException("LZW stream finished");
+    }
+
+    // run an action on the BitWriter, rethrowing its unchecked I/O errors as IOException
+    private static void uncheck(Runnable action) throws IOException {
+        try {
+            action.run();
+        }
+        catch (UncheckedIOException e) { throw e.getCause(); }
+    }
+
+    // a reusable output buffer whose array can be read in place
+    private static class Codewords extends ByteArrayOutputStream {
+        byte[] array() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+/*************************************************************************
+ *  Compilation:  javac LzwPipeline.java
+ *  Dependencies: LzwHeader.java LzwEncoder.java LzwDecoder.java SpscRing.java
+ *                BitReader.java BitWriter.java MyLZW.java
+ *
+ *  Compress or expand a single stream in three pipelined stages: a
+ *  reader thread, the coder on the calling thread, and a writer thread.
+ *
+ *************************************************************************/
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ *  The <tt>LzwPipeline</tt> class compresses and expands streams without a
+ *  block size, which one coder must handle from start to end, so that
+ *  waiting for input and output overlaps with coding. A reader thread fills
+ *  chunks of input, the calling thread runs the coder over them, and a
+ *  writer thread writes the coded chunks to the output. Each pair of
+ *  adjacent stages is linked by two {@link SpscRing}s: one passes full
+ *  chunks forward, and the other passes emptied chunks back to be refilled,
+ *  so memory use is fixed by the chunk size and depth and no chunk is
+ *  allocated after the start. An empty chunk ends the stream.
+ *  <p>
+ *  Codewords are packed into bytes on the coder's thread, and the writer
+ *  only writes whole chunks: packing a codeword is a shift and an or into
+ *  a 64-bit accumulator, far cheaper than handing each codeword to another
+ *  thread, and packed chunks carry about half the bytes that codewords
+ *  passed as <tt>int</tt>s would. When compressing, the reader's chunks
+ *  are copied straight into the encoder's lookahead window, without
+ *  passing through a read buffer on the way.
+ *  <p>
+ *  The output is identical to that of {@link MyLZW}. If any stage fails,
+ *  the rings are aborted so the others stop, and the first failure is
+ *  rethrown on the calling thread. The reader reads ahead of the coder,
+ *  so it may consume input past the end of a compressed stream; it is not
+ *  waited for once the coder is done, since it may be blocked in a read
+ *  that nothing will satisfy, as on a pipe or socket that stays open. Such
+ *  a read ends, and the reader thread with it, when the input is closed.
+ */
+public final class LzwPipeline {
+    private static final int CHUNK_SIZE = 1 << 16;  // default bytes per chunk
+    private static final int DEPTH = 4;             // default chunks per link
+
+    // don't instantiate
+    private LzwPipeline() { }
+
+    // bytes handed from one stage to the next
+    private static class Chunk {
+        private final byte[] a;             // the bytes
+        private int n;                      // number of bytes in a, or 0 at the end
+
+        Chunk(int size) {
+            a = new byte[size];
+        }
+    }
+
+    // the rings between two stages, and the chunks that circulate on them
+    private static class Link {
+        private final SpscRing<Chunk> full; // filled chunks, forward
+        private final SpscRing<Chunk> free; // emptied chunks, back
+
+        Link(int chunkSize, int depth) {
+            full = new SpscRing<Chunk>(depth);
+            free = new SpscRing<Chunk>(depth);
+            for (int i = 0; i < depth; i++)
+                free.put(new Chunk(chunkSize));
+        }
+
+        void abort() {
+            full.abort();
+            free.abort();
+        }
+    }
+
+    /**
+     * Writes <tt>header</tt> to <tt>out</tt>, compresses the bytes of
+     * <tt>in</tt> to <tt>out</tt> as the header describes with 64 KB chunks
+     * and four chunks between each pair of stages, then closes <tt>out</tt>.
+     * @param header the header of the stream, with no block size
+     * @param hashed use a {@link CodeTable} dictionary if <tt>true</tt>,
+     *     and an {@link ArrayTST} if <tt>false</tt>
+     * @param in the uncompressed input
+     * @param out the compressed output
+     * @throws IllegalArgumentException if the header has a block size
+     */
+    public static void compress(LzwHeader header, boolean hashed, BitReader in, BitWriter out) {
+        compress(header, hashed, in, out, CHUNK_SIZE, DEPTH);
+    }
+
+    /**
+     * Writes <tt>header</tt> to <tt>out</tt>, compresses the bytes of
+     * <tt>in</tt> to <tt>out</tt> as the header describes, then closes <tt>out</tt>.
+     * @param header the header of the stream, with no block size
+     * @param hashed use a {@link CodeTable} dictionary if <tt>true</tt>,
+     *     and an {@link ArrayTST} if <tt>false</tt>
+     * @param in the uncompressed input
+     * @param out the compressed output
+     * @param chunkSize the number of bytes in each chunk
+     * @param depth the number of chunks between each pair of stages, a power of 2
+     * @throws IllegalArgumentException if the header has a block size, the
+     *     chunk size is not positive, or the depth is not a power of 2
+     */
+    public static void compress(LzwHeader header, boolean hashed, BitReader in, BitWriter out,
+                                int chunkSize, int depth) {
+        if (header.blockSize() != 0) throw new IllegalArgumentException("Header has a block size");
+        LzwEncoder encoder = header.newEncoder(hashed);
+        run(in, out, chunkSize, depth, (input, output) -> {
+            header.write(output);
+            CRC32 crc = (header.checksum() == LzwHeader.CHECKSUM_CRC32) ? new CRC32() : null;
+            encoder.compress(input, output, crc);
+            if (crc != null) output.write((int) crc.getValue());
+        });
+    }
+
+    /**
+     * Expands the rest of the stream in <tt>in</tt>, whose header has just
+     * been read, to <tt>out</tt> with 64 KB chunks and four chunks between
+     * each pair of stages, then closes <tt>out</tt>.
+     * @param header the header read from <tt>in</tt>, with no block size
+     * @param in the compressed input, just after the header
+     * @param out the uncompressed output
+     * @throws IllegalArgumentException if the header has a block size
+     * @throws RuntimeException if the checksum does not match
+     */
+    public static void expand(LzwHeader header, BitReader in, BitWriter out) {
+        expand(header, in, out, CHUNK_SIZE, DEPTH);
+    }
+
+    /**
+     * Expands the rest of the stream in <tt>in</tt>, whose header has just
+     * been read, to <tt>out</tt>, then closes <tt>out</tt>.
+     * @param header the header read from <tt>in</tt>, with no block size
+     * @param in the compressed input, just after the header
+     * @param out the uncompressed output
+     * @param chunkSize the number of bytes in each chunk
+     * @param depth the number of chunks between each pair of stages, a power of 2
+     * @throws IllegalArgumentException if the header has a block size, the
+     *     chunk size is not positive, or the depth is not a power of 2
+     * @throws RuntimeException if the checksum does not match
+     */
+    public static void expand(LzwHeader header, BitReader in, BitWriter out, int chunkSize, int depth) {
+        if (header.blockSize() != 0) throw new IllegalArgumentException("Header has a block size");
+        LzwDecoder decoder = header.newDecoder();
+        run(in, out, chunkSize, depth, (input, output) -> {
+            CRC32 crc = (header.checksum() == LzwHeader.CHECKSUM_CRC32) ? new CRC32() : null;
+            decoder.expand(input, output, crc);
+            if (crc != null) {
+                input.align();
+                if (input.readInt() != (int) crc.getValue()) throw new RuntimeException("Checksum mismatch");
+            }
+        });
+    }
+
+    // run coder between a reader thread draining in and a writer thread filling out
+    private static void run(BitReader in, BitWriter out, int chunkSize, int depth,
+                            BiConsumer<BitReader, BitWriter> coder) {
+        if (chunkSize < 1) throw new IllegalArgumentException("Illegal chunk size " + chunkSize);
+        Link fromReader = new Link(chunkSize, depth);
+        Link toWriter = new Link(chunkSize, depth);
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        AtomicBoolean coded = new AtomicBoolean();  // has the coder finished?
+        Runnable abort = () -> {
+            fromReader.abort();
+            toWriter.abort();
+        };
+
+        start("lzw-reader", () -> {
+            Chunk chunk;
+            do {
+                chunk = fromReader.free.take();
+                chunk.n = in.readAvailable(chunk.a, 0, chunk.a.length);
+                fromReader.full.put(chunk);
+            } while (chunk.n > 0);
+        }, e -> {
+            // the coder may stop before the end of the input, leaving the reader waiting
+            if (!coded.get()) fail(failure, e, abort);
+        });
+        Thread writer = start("lzw-writer", () -> {
+            for (Chunk chunk = toWriter.full.take(); chunk.n > 0; chunk = toWriter.full.take()) {
+                out.write(chunk.a, 0, chunk.n);
+                toWriter.free.put(chunk);
+            }
+            out.close();
+        }, e -> fail(failure, e, abort));
+
+        try {
+            BitWriter chunks = new BitWriter(new LinkOutputStream(toWriter));
+            coder.accept(new BitReader(new LinkInputStream(fromReader)), chunks);
+            chunks.close();
+            coded.set(true);
+            fromReader.abort();
+        }
+        catch (Throwable e) { fail(failure, e, abort); }
+        // the reader stops at its next wait on the aborted ring, but it may be
+        // blocked in a read of in until that returns, so it is not joined
+        join(writer);
+
+        Throwable e = failure.get();
+        if (e instanceof RuntimeException) throw (RuntimeException) e;
+        if (e instanceof Error)            throw (Error) e;
+        if (e != null)                     throw new RuntimeException(e);
+    }
+
+    // record the first failure and stop every stage
+    private static void fail(AtomicReference<Throwable> failure, Throwable e, Runnable abort) {
+        failure.compareAndSet(null, e);
+        abort.run();
+    }
+
+    // start a stage on a thread of its own, handing any failure to onFailure
+    private static Thread start(String name, Runnable stage,
+                                Consumer<Throwable> onFailure) {
+        Thread thread = new Thread(() -> {
+            try {
+                stage.run();
+            }
+            catch (Throwable e) { onFailure.accept(e); }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted", e);
+        }
+    }
+
+    // the coder's input: the chunks filled by the reader
+    private static class LinkInputStream extends InputStream {
+        private final Link link;
+        private Chunk chunk;                // chunk being read, or null before the first
+        private int pos;                    // next byte of chunk
+
+        LinkInputStream(Link link) {
+            this.link = link;
+        }
+
+        public int read() {
+            if (!next()) return -1;
+            return chunk.a[pos++] & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!next()) return -1;
+            int k = Math.min(len, chunk.n - pos);
+            System.arraycopy(chunk.a, pos, b, off, k);
+            pos += k;
+            return k;
+        }
+
+        // make sure chunk has a byte left to read; return false at the end
+        private boolean next() {
+            if (chunk != null && pos < chunk.n) return true;
+            if (chunk != null && chunk.n == 0) return false;
+            if (chunk != null) link.free.put(chunk);
+            chunk = link.full.take();
+            pos = 0;
+            return chunk.n > 0;
+        }
+    }
+
+    // the coder's output: chunks for the writer
+    private static class LinkOutputStream extends OutputStream {
+        private final Link link;
+        private Chunk chunk;                // chunk being filled, or null
+
+        LinkOutputStream(Link link) {
+            this.link = link;
+        }
+
+        public void write(int b) {
+            if (chunk == null) take();
+            chunk.a[chunk.n++] = (byte) b;
+            if (chunk.n == chunk.a.length) send();
+        }
+
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                if (chunk == null) take();
+                int k = Math.min(len, chunk.a.length - chunk.n);
+                System.arraycopy(b, off, chunk.a, chunk.n, k);
+                chunk.n += k;
+                off += k;
+                len -= k;
+                if (chunk.n == chunk.a.length) send();
+            }
+        }
+
+        // send the last chunk, if any, and the empty chunk that ends the stream
+        public void close() {
+            if (chunk != null) send();
+            take();
+            send();
+        }
+
+        private void take() {
+            chunk = link.free.take();
+            chunk.n = 0;
+        }
+
+        private void send() {
+            link.full.put(chunk);
+            chunk = null;
+        }
+    }
+
+    /**
+     * Unit tests <tt>LzwPipeline</tt>: compresses random text with several
+     * reset modes, chunk sizes and depths, checks that the output is the
+     * same as <tt>MyLZW</tt>'s sequential output, expands it again with
+     * input left over after the stream, and checks that a corrupt stream
+     * fails rather than hangs.
+     */
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) ('a' + Math.min(random.nextInt(32), random.nextInt(32)));
+
+        byte[] compressed = null;
+        for (char mode : new char[] { 'n', 'r', 'l' }) {
+            LzwHeader header = new LzwHeader(mode, 9, 12, LzwHeader.CHECKSUM_CRC32, 0);
+            ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+            MyLZW.compress(header, true, new BitReader(new ByteArrayInputStream(data)), new BitWriter(sequential));
+            compressed = sequential.toByteArray();
+            for (int chunkSize : new int[] { 7, 1000, CHUNK_SIZE }) {
+                for (int depth : new int[] { 1, 2, DEPTH }) {
+                    String name = "mode " + mode + ", chunk size " + chunkSize + ", depth " + depth;
+                    ByteArrayOutputStream piped = new ByteArrayOutputStream();
+                    compress(header, true, new BitReader(new ByteArrayInputStream(data)), new BitWriter(piped),
+                             chunkSize, depth);
+                    if (!Arrays.equals(compressed, piped.toByteArray()))
+                        throw new RuntimeException("Output differs from MyLZW: " + name);
+
+                    byte[] trailing = Arrays.copyOf(compressed, compressed.length + 1000);
+                    BitReader in = new BitReader(new ByteArrayInputStream(trailing));
+                    ByteArrayOutputStream expanded = new ByteArrayOutputStream();
+                    expand(LzwHeader.read(in), in, new BitWriter(expanded), chunkSize, depth);
+                    if (!Arrays.equals(data, expanded.toByteArray()))
+                        throw new RuntimeException("Round trip failed: " + name);
+                }
+            }
+            StdOut.println("same as MyLZW and round trip ok: mode " + mode);
+        }
+
+        compressed[compressed.length / 2] ^= 0x55;
+        boolean failed = false;
+        try {
+            BitReader in = new BitReader(new ByteArrayInputStream(compressed));
+            expand(LzwHeader.read(in), in, new BitWriter(new ByteArrayOutputStream()));
+        }
+        catch (RuntimeException e) {
+            failed = true;
+            StdOut.println("corrupt stream fails: " + e.getMessage());
+        }
+        if (!failed) throw new RuntimeException("Corrupt stream expanded");
+    }
+}
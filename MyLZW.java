@@ -1,11 +1,35 @@
-import java.io.*;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
 /*************************************************************************
- *  Compilation:  javac LZW.java
- *  Execution:    java LZW - < input.txt   (compress)
- *  Execution:    java LZW + < input.txt   (expand)
- *  Dependencies: BinaryIn.java BinaryOut.java
+ *  Compilation:  javac MyLZW.java
+ *  Execution:    java MyLZW - n|r|m|w|l [hash|tst] [crc] [block=4m|pipe] [width=16] [dict=file] [in=file] [out=file] < input.txt   (compress)
+ *  Execution:    java MyLZW + [range=from-to|pipe] [dict=file] [in=file] [out=file] < input.txt   (expand)
+ *  Execution:    java MyLZW t [size=3839] [snapshot] [in=file] [out=file] < sample.txt   (train a dictionary)
+ *  Dependencies: LzwHeader.java LzwEncoder.java LzwDecoder.java LzwBlocks.java
+ *                LzwDictionary.java LzwPipeline.java
  *
  *  Compress or expand binary input from standard input using LZW.
+ *  Standard input and output are read and written through their channels.
+ *  With in=file the input file is mapped into memory instead, and with
+ *  out=file the output goes straight to the file's channel. A dictionary
+ *  trained on a sample of similar data seeds the codebook with its
+ *  phrases, which helps most on short inputs; the default size fills
+ *  the codewords up to 12 bits. With snapshot the dictionary is written
+ *  as a snapshot, which dict=file maps into memory instead of reading.
+ *  With pipe a stream without blocks is read, coded and written on three
+ *  threads, so I/O overlaps with coding.
  *
  *  WARNING: STARTING WITH ORACLE JAVA 6, UPDATE 7 the SUBSTRING
  *  METHOD TAKES TIME AND SPACE LINEAR IN THE SIZE OF THE EXTRACTED
@@ -18,221 +42,412 @@ import java.io.*;
  *************************************************************************/
 
 public class MyLZW {
-    private static final int R = 256;        // number of input chars
-    private static int L = 512;       // number of codewords = 2^W
-    private static int W = 9;         // codeword width
-    private static String fullCodebook;
-    public static void compress() { 
-        String input = BinaryStdIn.readString();
-        TST<Integer> st = new TST<Integer>();
-        double uncomp = 0;
-        double comp = 0;
-        double oldRatio = 0;
-        double newRatio = 0;
-        double ratioRatio = 0;
-        boolean ratioStarter = false;
-        for (int i = 0; i < R; i++)
-            st.put("" + (char) i, i);
-        int code = R+1;  // R is codeword for EOF
-        
-        while (input.length() > 0) {
-            String s = st.longestPrefixOf(input); // Find max prefix match s.            
-            uncomp += s.length() * 8;
-            BinaryStdOut.write(st.get(s), W); // Print s's encoding.
-            comp += W;
-            int t = s.length();
-            
-            if (t < input.length() && code < L)    // Add s to symbol table.
-            {
-                st.put(input.substring(0, t + 1), code++);                
-            }
-            else if(t < input.length() && code == L && W < 16)
-            {
-                W++;
-                L = (int)Math.pow(2, W);                
-                st.put(input.substring(0, t + 1), code++);
-            }
-            else if(t < input.length() && code == L && W == 16)
-            {
-                if(fullCodebook.equals("n"))
-                {
-                    //Do nothing
-                }
-                else if(fullCodebook.equals("r"))
-                {
-                    System.err.println("Resetting codebook...");
-                    st = new TST<Integer>(); //re-initialize st
-                    for (int i = 0; i < R; i++)
-                    {
-                        st.put("" + (char) i, i); //add ASCII values to st
-                    }
-                    code = R+1; //reset code value
-                    W = 9; //reset W to 9
-                    L = 512; //reset L to 2^9 (which is 512)                    
-                }
-                else if(fullCodebook.equals("m"))
-                {                  
-                    if(ratioStarter == false)
-                    {
-                        System.err.println("Monitoring...");
-                        oldRatio = uncomp/comp;
-                        ratioStarter = true;
-                    }
-                    else if(ratioStarter == true)
-                    {
-                        newRatio = uncomp/comp;
-                        ratioRatio = oldRatio/newRatio;
-                        if(ratioRatio > 1.1)//decide if need to reset or not
-                        {
-                            //RESET
-                            System.err.println("Ratio of ratios:" + ratioRatio);
-                            System.err.println("Resetting codebook...");
-                            st = new TST<Integer>(); //re-initialize st
-                            for (int i = 0; i < R; i++)
-                            {
-                                st.put("" + (char) i, i); //add ASCII values to st
-                            }
-                            code = R+1; //reset code value
-                            W = 9; //reset W to 9
-                            L = 512; //reset L to 2^9 (which is 512)
-                            oldRatio = 0;
-                            newRatio = 0;
-                            ratioStarter = false;
-                        }
-                    }                  
-                }
-            }            
-            input = input.substring(t);            // Scan past s in input.
+    /**
+     * Compresses the bytes of <tt>in</tt> to <tt>out</tt> with 9 to 16 bit
+     * codewords and the given reset mode, then closes <tt>out</tt>.
+     * @param mode the reset mode, one of <tt>'n'</tt>, <tt>'r'</tt>, <tt>'m'</tt>, <tt>'w'</tt> or <tt>'l'</tt>
+     * @param in the uncompressed input
+     * @param out the compressed output
+     */
+    public static void compress(char mode, BitReader in, BitWriter out)
+    {
+        compress(new LzwHeader(mode), true, in, out);
+    }
+
+    /**
+     * Writes <tt>header</tt> to <tt>out</tt>, compresses the bytes of <tt>in</tt>
+     * to <tt>out</tt> as the header describes, then closes <tt>out</tt>.
+     * Blocks are compressed concurrently on the common fork/join pool.
+     * @param header the header describing the compressed stream
+     * @param hashed use a {@link CodeTable} dictionary if <tt>true</tt>,
+     *     and an {@link ArrayTST} if <tt>false</tt>
+     * @param in the uncompressed input
+     * @param out the compressed output
+     */
+    public static void compress(LzwHeader header, boolean hashed, BitReader in, BitWriter out)
+    {
+        compress(header, hashed, in, out, false);
+    }
+
+    /**
+     * Writes <tt>header</tt> to <tt>out</tt>, compresses the bytes of <tt>in</tt>
+     * to <tt>out</tt> as the header describes, then closes <tt>out</tt>.
+     * Blocks are compressed concurrently on the common fork/join pool; a
+     * stream without blocks is compressed by an {@link LzwPipeline} if
+     * <tt>pipelined</tt> is <tt>true</tt>.
+     * @param header the header describing the compressed stream
+     * @param hashed use a {@link CodeTable} dictionary if <tt>true</tt>,
+     *     and an {@link ArrayTST} if <tt>false</tt>
+     * @param in the uncompressed input
+     * @param out the compressed output
+     * @param pipelined read, compress and write on three threads if <tt>true</tt>
+     */
+    public static void compress(LzwHeader header, boolean hashed, BitReader in, BitWriter out, boolean pipelined)
+    {
+        if (header.blockSize() != 0)
+        {
+            LzwBlocks.compress(header, hashed, in, out, ForkJoinPool.commonPool());
+            out.close();
+            return;
         }
-        BinaryStdOut.write(R, W);
-        BinaryStdOut.close();
-    } 
-    
-    public static void expand() {
-        String[] st = new String[65536];
-        int i; // next available codeword value
-        double comp = 0;
-        double uncomp = 0;
-        double oldRatio = 0;
-        double newRatio = 0;
-        double ratioRatio = 0;
-        boolean ratioStarter = false;
-        // initialize symbol table with all 1-character strings
-        for (i = 0; i < R; i++)
-            st[i] = "" + (char) i;
-        st[i++] = "";                        // (unused) lookahead for EOF
-
-        int codeword = BinaryStdIn.readInt(W);     
-        //comp += W;
-        if (codeword == R) return;           // expanded message is empty string        
-        String val = st[codeword];
-
-        while (true) {
-            uncomp += val.length() * 8;
-            comp += W;            
-            if(i == L && W < 16)
-            {
-                W++;
-                L = (int)Math.pow(2, W);
-            }
-            else if(i == L && W == 16)
-            {
-                if(fullCodebook.equals("n"))
-                {
-                    //do nothing
-                }
-                else if(fullCodebook.equals("r"))
-                {
-                    System.err.println("Resetting codebook...");
-                    st = new String[65536]; //reset codebook array
-                    for (i = 0; i < R; i++)
-                    {
-                        st[i] = "" + (char) i;
-                    } //re-add all ASCII values to codebook array
-                    W = 9; //reset W to 9
-                    L = 512; //reset L to 2^9 (which is 512)
-                }
-                else if(fullCodebook.equals("m"))
-                {
-                    if(ratioStarter == false)
-                    {
-                        System.err.println("Monitoring...");
-                        oldRatio = uncomp/comp;
-                        ratioStarter = true;
-                    }
-                    else if(ratioStarter == true)
-                    {
-                        newRatio = uncomp/comp;
-                        ratioRatio = oldRatio/newRatio;
-                        if(ratioRatio > 1.1)//decide if need to reset or not
-                        {
-                            //RESET
-                            System.err.println("Ratio of ratios:" + ratioRatio);
-                            System.err.println("Resetting codebook...");
-                            st = new String[65536]; //reset codebook array
-                            for (i = 0; i < R; i++)
-                            {
-                                st[i] = "" + (char) i;
-                            } //re-add all ASCII values to codebook array
-                            W = 9; //reset W to 9
-                            L = 512; //reset L to 2^9 (which is 512)
-                            oldRatio = 0;
-                            newRatio = 0;
-                            ratioStarter = false;
-                        }
-                    }   
-                }
-            }
-            BinaryStdOut.write(val);
-            codeword = BinaryStdIn.readInt(W);
-            if (codeword == R) break;
-            String s;// = st[codeword];
-            if (i == codeword) s = val + val.charAt(0); 
-            else s = st[codeword];
-            if (i < L) 
-            {
-                //System.err.println(i);
-                //System.err.println("Here");
-                st[i++] = val + s.charAt(0);
-            }
-            val = s;
+        if (pipelined)
+        {
+            LzwPipeline.compress(header, hashed, in, out);
+            return;
+        }
+        header.write(out);
+        CRC32 crc = (header.checksum() == LzwHeader.CHECKSUM_CRC32) ? new CRC32() : null;
+        header.newEncoder(hashed).compress(in, out, crc);
+        if (crc != null) out.write((int) crc.getValue());
+        out.close();
+    }
+
+    /**
+     * Writes <tt>header</tt> to <tt>out</tt>, compresses the bytes of <tt>in</tt>
+     * to <tt>out</tt> as the header describes, then closes <tt>out</tt>.
+     * The channels are read and written through direct buffers of the given
+     * size, which the engine works on in place. To use pooled buffers
+     * instead, wrap the channels in a {@link BitReader} and {@link BitWriter}
+     * over the buffers and call <tt>compress(header, hashed, reader, writer)</tt>.
+     * @param header the header describing the compressed stream
+     * @param hashed use a {@link CodeTable} dictionary if <tt>true</tt>,
+     *     and an {@link ArrayTST} if <tt>false</tt>
+     * @param in the uncompressed input, which is left open
+     * @param out the compressed output
+     * @param bufferSize the size in bytes of each direct buffer
+     * @throws IllegalArgumentException unless <tt>bufferSize</tt> is positive
+     */
+    public static void compress(LzwHeader header, boolean hashed, ReadableByteChannel in, WritableByteChannel out,
+                                int bufferSize)
+    {
+        compress(header, hashed, reader(in, bufferSize), writer(out, bufferSize));
+    }
+
+    /**
+     * Compresses the file <tt>in</tt> to the file <tt>out</tt>, reading the
+     * input through memory-mapped windows rather than read calls into a
+     * stream buffer, and writing the output through a file channel rather
+     * than an output stream. The encoder still copies the input into its
+     * lookahead window.
+     * <tt>out</tt> is created or truncated.
+     * @param header the header describing the compressed stream
+     * @param hashed use a {@link CodeTable} dictionary if <tt>true</tt>,
+     *     and an {@link ArrayTST} if <tt>false</tt>
+     * @param in the uncompressed file
+     * @param out the compressed file
+     */
+    public static void compress(LzwHeader header, boolean hashed, Path in, Path out)
+    {
+        try (BitReader reader = reader(in))
+        {
+            compress(header, hashed, reader, writer(out));
         }
-        BinaryStdOut.close();
     }
 
-    public static void main(String[] args) throws IOException
+    /**
+     * Expands the file <tt>in</tt> to the file <tt>out</tt>, reading the
+     * input through memory-mapped windows and writing the output through a
+     * file channel. <tt>out</tt> is created or truncated.
+     * @param in the compressed file
+     * @param out the uncompressed file
+     * @throws RuntimeException if the header is invalid or the checksum does not match
+     */
+    public static void expand(Path in, Path out)
+    {
+        expand(in, out, null);
+    }
+
+    /**
+     * Expands the file <tt>in</tt>, which may use the given dictionary, to the
+     * file <tt>out</tt>, as <tt>expand(in, out)</tt> does.
+     * @param in the compressed file
+     * @param out the uncompressed file
+     * @param dictionary the dictionary, or <tt>null</tt>
+     * @throws RuntimeException if the header is invalid, the stream uses
+     *     another dictionary, or the checksum does not match
+     */
+    public static void expand(Path in, Path out, LzwDictionary dictionary)
+    {
+        try (BitReader reader = reader(in))
+        {
+            expand(reader, writer(out), dictionary);
+        }
+    }
+
+    /**
+     * Trains a dictionary of at most <tt>size</tt> phrases on the bytes of
+     * <tt>in</tt> and writes it to <tt>out</tt>, then closes <tt>out</tt>.
+     * @param in the sample
+     * @param size the maximum number of phrases
+     * @param snapshot write a snapshot to be memory-mapped if <tt>true</tt>,
+     *     and a compact dictionary file if <tt>false</tt>
+     * @param out the dictionary output
+     */
+    public static void train(BitReader in, int size, boolean snapshot, BitWriter out)
+    {
+        LzwDictionary dictionary = LzwDictionary.train(in, size);
+        if (snapshot) dictionary.writeSnapshot(out);
+        else          dictionary.write(out);
+        out.close();
+    }
+
+    // the dictionary or snapshot in the file, or null if the path is null
+    private static LzwDictionary dictionary(Path file)
+    {
+        if (file == null) return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            return LzwDictionary.open(channel);
+        }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+
+    // a reader over the file mapped into memory, or over standard input's channel if null
+    private static BitReader reader(Path file)
+    {
+        if (file == null) return new BitReader(new FileInputStream(FileDescriptor.in).getChannel());
+        try
+        {
+            return BitReader.map(FileChannel.open(file, StandardOpenOption.READ));
+        }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+
+    // a writer over the file's channel, created or truncated, or over standard output's channel if null
+    private static BitWriter writer(Path file)
+    {
+        if (file == null) return new BitWriter(new FileOutputStream(FileDescriptor.out).getChannel());
+        try
+        {
+            return new BitWriter(FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                                                  StandardOpenOption.TRUNCATE_EXISTING));
+        }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+
+    /**
+     * Expands the stream in <tt>in</tt> to <tt>out</tt>, configured by the
+     * stream's header, then closes <tt>out</tt>.
+     * Blocks are expanded concurrently on the common fork/join pool.
+     * @param in the compressed input
+     * @param out the uncompressed output
+     * @throws RuntimeException if the header is invalid or the checksum does not match
+     */
+    public static void expand(BitReader in, BitWriter out)
+    {
+        expand(in, out, null);
+    }
+
+    /**
+     * Expands the stream in <tt>in</tt>, which may use the given dictionary,
+     * to <tt>out</tt>, as <tt>expand(in, out)</tt> does.
+     * @param in the compressed input
+     * @param out the uncompressed output
+     * @param dictionary the dictionary, or <tt>null</tt>
+     * @throws RuntimeException if the header is invalid, the stream uses
+     *     another dictionary, or the checksum does not match
+     */
+    public static void expand(BitReader in, BitWriter out, LzwDictionary dictionary)
+    {
+        expand(in, out, dictionary, false);
+    }
+
+    /**
+     * Expands the stream in <tt>in</tt>, which may use the given dictionary,
+     * to <tt>out</tt>, as <tt>expand(in, out)</tt> does, except that a stream
+     * without blocks is expanded by an {@link LzwPipeline} if
+     * <tt>pipelined</tt> is <tt>true</tt>.
+     * @param in the compressed input
+     * @param out the uncompressed output
+     * @param dictionary the dictionary, or <tt>null</tt>
+     * @param pipelined read, expand and write on three threads if <tt>true</tt>
+     * @throws RuntimeException if the header is invalid, the stream uses
+     *     another dictionary, or the checksum does not match
+     */
+    public static void expand(BitReader in, BitWriter out, LzwDictionary dictionary, boolean pipelined)
+    {
+        LzwHeader header = LzwHeader.read(in, dictionary);
+        if (header.blockSize() != 0)
+        {
+            LzwBlocks.expand(header, in, out, ForkJoinPool.commonPool());
+            out.close();
+            return;
+        }
+        if (pipelined)
+        {
+            LzwPipeline.expand(header, in, out);
+            return;
+        }
+        CRC32 crc = (header.checksum() == LzwHeader.CHECKSUM_CRC32) ? new CRC32() : null;
+        header.newDecoder().expand(in, out, crc);
+        if (crc != null)
+        {
+            in.align();
+            if (in.readInt() != (int) crc.getValue()) throw new RuntimeException("Checksum mismatch");
+        }
+        out.close();
+    }
+
+    /**
+     * Expands the bytes in <tt>[from, to)</tt> of the blocked stream in the
+     * given file to <tt>out</tt>, decoding only the blocks that overlap the
+     * range, then closes <tt>out</tt>.
+     * @param in the compressed file
+     * @param from the offset of the first uncompressed byte to expand
+     * @param to one past the offset of the last uncompressed byte to expand
+     * @param out the uncompressed output
+     * @throws RuntimeException if the file is not a blocked stream or a checksum does not match
+     */
+    public static void expand(FileChannel in, long from, long to, BitWriter out)
+    {
+        expand(in, null, from, to, out);
+    }
+
+    /**
+     * Expands the bytes in <tt>[from, to)</tt> of the blocked stream in the
+     * given file, which may use the given dictionary, to <tt>out</tt>, as
+     * <tt>expand(in, from, to, out)</tt> does.
+     * @param in the compressed file
+     * @param dictionary the dictionary, or <tt>null</tt>
+     * @param from the offset of the first uncompressed byte to expand
+     * @param to one past the offset of the last uncompressed byte to expand
+     * @param out the uncompressed output
+     * @throws RuntimeException if the file is not a blocked stream, it uses
+     *     another dictionary, or a checksum does not match
+     */
+    public static void expand(FileChannel in, LzwDictionary dictionary, long from, long to, BitWriter out)
+    {
+        LzwBlocks.expand(in, dictionary, from, to, out);
+        out.close();
+    }
+
+    /**
+     * Expands the stream in <tt>in</tt>, which may use the given dictionary,
+     * to <tt>out</tt>, as <tt>expand(in, out, dictionary)</tt> does for a
+     * reader and writer, then closes <tt>out</tt>. The channels are read and
+     * written through direct buffers of the given size.
+     * @param in the compressed input, which is left open
+     * @param out the uncompressed output
+     * @param dictionary the dictionary, or <tt>null</tt>
+     * @param bufferSize the size in bytes of each direct buffer
+     * @throws IllegalArgumentException unless <tt>bufferSize</tt> is positive
+     * @throws RuntimeException if the header is invalid, the stream uses
+     *     another dictionary, or the checksum does not match
+     */
+    public static void expand(ReadableByteChannel in, WritableByteChannel out, LzwDictionary dictionary,
+                              int bufferSize)
+    {
+        expand(reader(in, bufferSize), writer(out, bufferSize), dictionary);
+    }
+
+    // a reader over the channel through a direct buffer of the given size
+    private static BitReader reader(ReadableByteChannel channel, int bufferSize)
+    {
+        if (bufferSize < 1) throw new IllegalArgumentException("Illegal buffer size " + bufferSize);
+        return new BitReader(channel, ByteBuffer.allocateDirect(bufferSize));
+    }
+
+    // a writer over the channel through a direct buffer of the given size
+    private static BitWriter writer(WritableByteChannel channel, int bufferSize)
+    {
+        if (bufferSize < 1) throw new IllegalArgumentException("Illegal buffer size " + bufferSize);
+        return new BitWriter(channel, ByteBuffer.allocateDirect(bufferSize));
+    }
+
+    // parse a byte count with an optional k or m suffix
+    private static int parseSize(String s)
+    {
+        int scale = 1;
+        if      (s.endsWith("k")) scale = 1 << 10;
+        else if (s.endsWith("m")) scale = 1 << 20;
+        if (scale > 1) s = s.substring(0, s.length() - 1);
+        int size = Integer.parseInt(s) * scale;
+        if (size < 1) throw new IllegalArgumentException("Illegal size " + s);
+        return size;
+    }
+
+    public static void main(String[] args)
     {
         if (args[0].equals("-")) 
         {
-            BufferedWriter output = null;             
-            File file = new File("fullCodebook.txt");
-            output = new BufferedWriter(new FileWriter(file));
-            output.write(args[1]);             
-            output.close();
-            if((args[1] == null) || (!(args[1].equals("n")) && !(args[1].equals("r")) && !(args[1].equals("m"))))
+            if((args.length < 2) || (!(args[1].equals("n")) && !(args[1].equals("r")) && !(args[1].equals("m")) && !(args[1].equals("w")) && !(args[1].equals("l"))))
             {
                 throw new IllegalArgumentException("Must enter a full codebook mode choice");
             }
-            else
+            boolean hashed = true;
+            int checksum = LzwHeader.CHECKSUM_NONE;
+            int blockSize = 0;
+            int maxWidth = 16;
+            boolean pipelined = false;
+            Path dict = null;
+            Path input = null;
+            Path output = null;
+            for (int i = 2; i < args.length; i++)
             {
-                fullCodebook = args[1];
-                compress();
+                if      (args[i].equals("hash")) hashed = true;
+                else if (args[i].equals("tst"))  hashed = false;
+                else if (args[i].equals("crc"))  checksum = LzwHeader.CHECKSUM_CRC32;
+                else if (args[i].startsWith("block=")) blockSize = parseSize(args[i].substring(6));
+                else if (args[i].equals("pipe"))       pipelined = true;
+                else if (args[i].startsWith("width=")) maxWidth = Integer.parseInt(args[i].substring(6));
+                else if (args[i].startsWith("dict="))  dict = Paths.get(args[i].substring(5));
+                else if (args[i].startsWith("in="))    input = Paths.get(args[i].substring(3));
+                else if (args[i].startsWith("out="))   output = Paths.get(args[i].substring(4));
+                else throw new IllegalArgumentException("Illegal option " + args[i]);
             }
+            LzwHeader header = new LzwHeader(args[1].charAt(0), 9, maxWidth, checksum, blockSize, dictionary(dict));
+            compress(header, hashed, reader(input), writer(output), pipelined);
         }
         else if (args[0].equals("+")) 
         {
-            BufferedReader br = new BufferedReader(new FileReader("fullCodebook.txt"));            
-            String line = br.readLine();
-            fullCodebook = line.toString();
-            br.close();
-            System.err.println(fullCodebook + " mode");
-            if((fullCodebook == null) || (!(fullCodebook.equals("n")) && !(fullCodebook.equals("r")) && !(fullCodebook.equals("m"))))
+            String range = null;
+            boolean pipelined = false;
+            Path dict = null;
+            Path input = null;
+            Path output = null;
+            for (int i = 1; i < args.length; i++)
             {
-                throw new IllegalArgumentException("Must enter a full codebook mode choice");
+                if      (args[i].startsWith("range=")) range = args[i].substring(6);
+                else if (args[i].equals("pipe"))       pipelined = true;
+                else if (args[i].startsWith("dict="))  dict = Paths.get(args[i].substring(5));
+                else if (args[i].startsWith("in="))    input = Paths.get(args[i].substring(3));
+                else if (args[i].startsWith("out="))   output = Paths.get(args[i].substring(4));
+                else throw new IllegalArgumentException("Illegal option " + args[i]);
+            }
+            if (range != null)
+            {
+                // from-to, or from- for the rest of the stream
+                int dash = range.indexOf('-');
+                if (dash < 0) throw new IllegalArgumentException("Illegal range " + range);
+                long from = Long.parseLong(range.substring(0, dash));
+                long to = (dash == range.length() - 1) ? Long.MAX_VALUE : Long.parseLong(range.substring(dash + 1));
+                // standard input redirected from a file can be read at any position
+                try (FileChannel in = (input == null) ? new FileInputStream(FileDescriptor.in).getChannel()
+                                                      : FileChannel.open(input, StandardOpenOption.READ))
+                {
+                    expand(in, dictionary(dict), from, to, writer(output));
+                }
+                catch (IOException e) { throw new UncheckedIOException(e); }
+            }
+            else expand(reader(input), writer(output), dictionary(dict), pipelined);
+        }
+        else if (args[0].equals("t"))
+        {
+            int size = (1 << 12) - 257;
+            boolean snapshot = false;
+            Path input = null;
+            Path output = null;
+            for (int i = 1; i < args.length; i++)
+            {
+                if      (args[i].startsWith("size=")) size = parseSize(args[i].substring(5));
+                else if (args[i].equals("snapshot"))  snapshot = true;
+                else if (args[i].startsWith("in="))   input = Paths.get(args[i].substring(3));
+                else if (args[i].startsWith("out="))  output = Paths.get(args[i].substring(4));
+                else throw new IllegalArgumentException("Illegal option " + args[i]);
             }
-            else
+            try (BitReader reader = reader(input))
             {
-                expand();
+                train(reader, size, snapshot, writer(output));
             }
         }
         else 
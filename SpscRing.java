@@ -0,0 +1,95 @@
+/*************************************************************************
+ *  Compilation:  javac SpscRing.java
+ *
+ *  A bounded lock-free ring buffer between one producer thread and one
+ *  consumer thread.
+ *
+ *************************************************************************/
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *  The <tt>SpscRing</tt> class is a bounded first-in first-out queue for
+ *  exactly one producer thread and one consumer thread. Each end writes only
+ *  its own index, so no locks or compare-and-set are needed: the producer
+ *  fills a slot and then advances the volatile tail, which publishes the
+ *  slot to the consumer, and the consumer empties a slot and then advances
+ *  the volatile head, which hands it back to the producer.
+ *  <p>
+ *  <em>put</em> waits while the ring is full and <em>take</em> while it is
+ *  empty, spinning briefly, then yielding, then parking for a few
+ *  microseconds at a time, so a waiting thread costs little once the wait
+ *  is long. Once <em>abort</em> is called, waiting calls throw, so a stage
+ *  of a pipeline that fails cannot leave the others waiting forever.
+ */
+public class SpscRing<T> {
+    private static final int SPINS = 64;        // busy waits before yielding
+    private static final int YIELDS = 64;       // yields before parking
+    private static final long PARK = 20_000;    // nanoseconds parked at a time
+
+    private final Object[] slots;               // the items, at their index mod capacity
+    private final int mask;                     // capacity - 1
+    private volatile long head;                 // index of the next item to take, written by the consumer
+    private volatile long tail;                 // index of the next slot to fill, written by the producer
+    private volatile boolean aborted;           // has abort been called?
+
+    /**
+     * Initializes an empty ring.
+     * @param capacity the maximum number of items, a power of 2
+     * @throws IllegalArgumentException unless <tt>capacity</tt> is a positive power of 2
+     */
+    public SpscRing(int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Illegal capacity " + capacity);
+        slots = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Adds an item, waiting while the ring is full. Called only by the producer.
+     * @param item the item
+     * @throws NullPointerException if <tt>item</tt> is <tt>null</tt>
+     * @throws RuntimeException if the ring is aborted
+     */
+    public void put(T item) {
+        if (item == null) throw new NullPointerException();
+        long t = tail;
+        for (int waits = 0; t - head == slots.length; waits++)
+            idle(waits);
+        slots[(int) t & mask] = item;
+        tail = t + 1;
+    }
+
+    /**
+     * Removes the oldest item, waiting while the ring is empty. Called only by the consumer.
+     * @return the oldest item
+     * @throws RuntimeException if the ring is aborted
+     */
+    @SuppressWarnings("unchecked")
+    public T take() {
+        long h = head;
+        for (int waits = 0; h == tail; waits++)
+            idle(waits);
+        int i = (int) h & mask;
+        T item = (T) slots[i];
+        slots[i] = null;
+        head = h + 1;
+        return item;
+    }
+
+    /**
+     * Makes every waiting and future <em>put</em> or <em>take</em> that has
+     * to wait throw. Can be called by any thread.
+     */
+    public void abort() {
+        aborted = true;
+    }
+
+    // back off after the given number of waits
+    private void idle(int waits) {
+        if (aborted) throw new RuntimeException("Pipeline aborted");
+        if      (waits < SPINS)          Thread.onSpinWait();
+        else if (waits < SPINS + YIELDS) Thread.yield();
+        else                             LockSupport.parkNanos(PARK);
+    }
+}
@@ -54,6 +54,11 @@
  *  <p>
  *  This implementation uses a ternary search trie.
  *  <p>
+ *  Keys can also be given as a range of a <tt>byte</tt> array, each byte
+ *  standing for the 8-bit character of the same value, so a client
+ *  working on bytes finds and adds keys without building a <tt>String</tt>
+ *  or widening its input to <tt>char</tt>s.
+ *  <p>
  *  For additional documentation, see <a href="http://algs4.cs.princeton.edu/52trie">Section 5.2</a> of
  *  <i>Algorithms, 4th Edition</i> by Robert Sedgewick and Kevin Wayne.
  */
@@ -67,6 +72,38 @@ public class TST<Value> {
         private Value val;                     // value associated with string
     }
 
+    /**
+     * The result of a longest-prefix match: the length of the longest key
+     * that is a prefix of the query and the value associated with that key,
+     * and a handle on the node where the key ends, so that
+     * {@link TST#insertChild(Match, char, Object)} can extend the key by one
+     * character without walking it again.
+     * A single instance can be reused across calls to
+     * {@link TST#longestPrefixOf(CharSequence, int, Match)}.
+     */
+    public static class Match<Value> {
+        private int length;     // length of matched key, or 0 if none
+        private Value val;      // value of matched key, or null if none
+        private Node<Value> node;   // node of the last character of matched key, or null if none
+
+        /**
+         * Returns the length of the matched key.
+         * @return the length of the matched key, or 0 if no key matched
+         */
+        public int length() {
+            return length;
+        }
+
+        /**
+         * Returns the value associated with the matched key.
+         * @return the value associated with the matched key, or <tt>null</tt>
+         *     if no key matched
+         */
+        public Value value() {
+            return val;
+        }
+    }
+
     /**
      * Initializes an empty string symbol table.
      */
@@ -119,6 +156,65 @@ public class TST<Value> {
         else                           return x;
     }
 
+    /**
+     * Returns the value associated with the key <tt>key[from, from+length)</tt>.
+     * @param key the characters holding the key
+     * @param from the offset of the first character of the key
+     * @param length the length of the key
+     * @return the value associated with the key if the key is in the symbol table
+     *     and <tt>null</tt> if the key is not in the symbol table
+     * @throws NullPointerException if <tt>key</tt> is <tt>null</tt>
+     */
+    public Value get(CharSequence key, int from, int length) {
+        if (key == null) throw new NullPointerException();
+        if (length <= 0) throw new IllegalArgumentException("key must have length >= 1");
+        Node<Value> x = get(root, key, from, from + length);
+        if (x == null) return null;
+        return x.val;
+    }
+
+    // return subtrie corresponding to key[d, end)
+    private Node<Value> get(Node<Value> x, CharSequence key, int d, int end) {
+        while (x != null) {
+            char c = key.charAt(d);
+            if      (c < x.c)      x = x.left;
+            else if (c > x.c)      x = x.right;
+            else if (d < end - 1) { x = x.mid; d++; }
+            else                   return x;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value associated with the key <tt>key[from, from+length)</tt>,
+     * each byte standing for the 8-bit character of the same value.
+     * @param key the bytes holding the key
+     * @param from the offset of the first byte of the key
+     * @param length the length of the key
+     * @return the value associated with the key if the key is in the symbol table
+     *     and <tt>null</tt> if the key is not in the symbol table
+     * @throws NullPointerException if <tt>key</tt> is <tt>null</tt>
+     */
+    public Value get(byte[] key, int from, int length) {
+        if (key == null) throw new NullPointerException();
+        if (length <= 0) throw new IllegalArgumentException("key must have length >= 1");
+        Node<Value> x = get(root, key, from, from + length);
+        if (x == null) return null;
+        return x.val;
+    }
+
+    // return subtrie corresponding to key[d, end)
+    private Node<Value> get(Node<Value> x, byte[] key, int d, int end) {
+        while (x != null) {
+            char c = (char) (key[d] & 0xff);
+            if      (c < x.c)      x = x.left;
+            else if (c > x.c)      x = x.right;
+            else if (d < end - 1) { x = x.mid; d++; }
+            else                   return x;
+        }
+        return null;
+    }
+
     /**
      * Inserts the key-value pair into the symbol table, overwriting the old value
      * with the new value if the key is already in the symbol table.
@@ -128,7 +224,6 @@ public class TST<Value> {
      * @throws NullPointerException if <tt>key</tt> is <tt>null</tt>
      */
     public void put(String s, Value val) {
-        if (!contains(s)) N++;
         root = put(root, s, val, 0);
     }
 
@@ -141,10 +236,105 @@ public class TST<Value> {
         if      (c < x.c)             x.left  = put(x.left,  s, val, d);
         else if (c > x.c)             x.right = put(x.right, s, val, d);
         else if (d < s.length() - 1)  x.mid   = put(x.mid,   s, val, d+1);
-        else                          x.val   = val;
+        else                          set(x, val);
+        return x;
+    }
+
+    /**
+     * Inserts the key <tt>key[from, from+length)</tt> with the given value,
+     * without first copying the key into a <tt>String</tt>.
+     * @param key the characters holding the key
+     * @param from the offset of the first character of the key
+     * @param length the length of the key
+     * @param val the value
+     * @throws NullPointerException if <tt>key</tt> is <tt>null</tt>
+     */
+    public void put(CharSequence key, int from, int length, Value val) {
+        root = put(root, key, val, from, from + length);
+    }
+
+    private Node<Value> put(Node<Value> x, CharSequence s, Value val, int d, int end) {
+        char c = s.charAt(d);
+        if (x == null) {
+            x = new Node<Value>();
+            x.c = c;
+        }
+        if      (c < x.c)   x.left  = put(x.left,  s, val, d, end);
+        else if (c > x.c)   x.right = put(x.right, s, val, d, end);
+        else if (d < end-1) x.mid   = put(x.mid,   s, val, d+1, end);
+        else                set(x, val);
+        return x;
+    }
+
+    /**
+     * Inserts the key <tt>key[from, from+length)</tt> with the given value,
+     * each byte standing for the 8-bit character of the same value.
+     * @param key the bytes holding the key
+     * @param from the offset of the first byte of the key
+     * @param length the length of the key
+     * @param val the value
+     * @throws NullPointerException if <tt>key</tt> is <tt>null</tt>
+     */
+    public void put(byte[] key, int from, int length, Value val) {
+        root = put(root, key, val, from, from + length);
+    }
+
+    private Node<Value> put(Node<Value> x, byte[] s, Value val, int d, int end) {
+        char c = (char) (s[d] & 0xff);
+        if (x == null) {
+            x = new Node<Value>();
+            x.c = c;
+        }
+        if      (c < x.c)   x.left  = put(x.left,  s, val, d, end);
+        else if (c > x.c)   x.right = put(x.right, s, val, d, end);
+        else if (d < end-1) x.mid   = put(x.mid,   s, val, d+1, end);
+        else                set(x, val);
+        return x;
+    }
+
+    /**
+     * Inserts the key formed by the key of a match followed by <tt>c</tt>,
+     * with the given value, overwriting the old value if the key is already
+     * in the symbol table. Starts from the node where the matched key ends,
+     * so only the siblings below it are searched: time proportional to the
+     * logarithm of the alphabet size, not to the length of the key.
+     * The match must come from a longest-prefix match on this symbol table.
+     * @param match a match of at least one character
+     * @param c the character extending the matched key
+     * @param val the value
+     * @throws IllegalArgumentException if no key was matched
+     */
+    public void insertChild(Match<Value> match, char c, Value val) {
+        if (match.node == null) throw new IllegalArgumentException("no key was matched");
+        Node<Value> x = match.node;
+        if (x.mid == null) x.mid = node(c);
+        x = x.mid;
+        while (c != x.c) {
+            if (c < x.c) {
+                if (x.left == null) x.left = node(c);
+                x = x.left;
+            }
+            else {
+                if (x.right == null) x.right = node(c);
+                x = x.right;
+            }
+        }
+        set(x, val);
+    }
+
+    // a new node for character c
+    private static <Value> Node<Value> node(char c) {
+        Node<Value> x = new Node<Value>();
+        x.c = c;
         return x;
     }
 
+    // associate val with the key ending at x, counting the key if it is new
+    private void set(Node<Value> x, Value val) {
+        if (x.val == null) N++;
+        x.val = val;
+    }
+
     /**
      * Returns the string in the symbol table that is the longest prefix of <tt>query</tt>,
      * or <tt>null</tt>, if no such string.
@@ -153,7 +343,7 @@ public class TST<Value> {
      * @return the string in the symbol table that is the longest prefix of <tt>query</tt>,
      *     or <tt>null</tt> if no such string
      */
-    public String longestPrefixOf(String s) {
+    public String longestPrefixOf(CharSequence s) {
         if (s == null || s.length() == 0) return null;
         int length = 0;
         Node<Value> x = root;
@@ -168,7 +358,78 @@ public class TST<Value> {
                 x = x.mid;
             }
         }
-        return s.substring(0, length);
+        return s.subSequence(0, length).toString();
+    }
+
+    /**
+     * Finds the longest key in the symbol table that is a prefix of
+     * <tt>query[from, query.length())</tt>, without copying the query.
+     * Runs in time proportional to the length of the match plus the
+     * number of sibling comparisons, independent of the length of the query.
+     * @param query the query characters
+     * @param from the offset in <tt>query</tt> at which to start matching
+     * @param match if not <tt>null</tt>, receives the length and value of the match
+     * @return the length of the longest matching key, or 0 if no key matches
+     * @throws NullPointerException if <tt>query</tt> is <tt>null</tt>
+     */
+    public int longestPrefixOf(CharSequence query, int from, Match<Value> match) {
+        int length = 0;
+        Value val = null;
+        Node<Value> last = null;
+        Node<Value> x = root;
+        int i = from;
+        int n = query.length();
+        while (x != null && i < n) {
+            char c = query.charAt(i);
+            if      (c < x.c) x = x.left;
+            else if (c > x.c) x = x.right;
+            else {
+                i++;
+                if (x.val != null) { length = i - from; val = x.val; last = x; }
+                x = x.mid;
+            }
+        }
+        if (match != null) {
+            match.length = length;
+            match.val = val;
+            match.node = last;
+        }
+        return length;
+    }
+
+    /**
+     * Finds the longest key in the symbol table that is a prefix of
+     * <tt>query[from, to)</tt>, each byte standing for the 8-bit character
+     * of the same value, without copying the query.
+     * @param query the query bytes
+     * @param from the offset in <tt>query</tt> at which to start matching
+     * @param to one past the offset of the last byte that may be matched
+     * @param match if not <tt>null</tt>, receives the length and value of the match
+     * @return the length of the longest matching key, or 0 if no key matches
+     * @throws NullPointerException if <tt>query</tt> is <tt>null</tt>
+     */
+    public int longestPrefixOf(byte[] query, int from, int to, Match<Value> match) {
+        int length = 0;
+        Value val = null;
+        Node<Value> last = null;
+        Node<Value> x = root;
+        int i = from;
+        while (x != null && i < to) {
+            char c = (char) (query[i] & 0xff);
+            if      (c < x.c) x = x.left;
+            else if (c > x.c) x = x.right;
+            else {
+                i++;
+                if (x.val != null) { length = i - from; val = x.val; last = x; }
+                x = x.mid;
+            }
+        }
+        if (match != null) {
+            match.length = length;
+            match.val = val;
+            match.node = last;
+        }
+        return length;
     }
 
     /**
@@ -0,0 +1,62 @@
+/*************************************************************************
+ *  Compilation:  mvn -B package
+ *  Execution:    java -jar benchmarks/target/benchmarks.jar [JMH options]
+ *
+ *  Run the benchmarks with the GC profiler and report MB/s and bytes
+ *  allocated per byte processed.
+ *
+ *************************************************************************/
+
+package lzw.bench;
+
+import java.util.Collection;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ *  The <tt>BenchmarkMain</tt> class runs the benchmarks selected by the usual
+ *  JMH command-line options, always with the GC profiler, then converts the
+ *  results into units that compare across benchmarks and input sizes:
+ *  MB/s of uncompressed data, and bytes allocated per byte processed.
+ *  Every benchmark handles its <tt>size</tt> parameter in bytes per operation.
+ */
+public final class BenchmarkMain {
+    // don't instantiate
+    private BenchmarkMain() { }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        System.out.println();
+        System.out.printf("%-40s %-24s %12s %14s%n", "Benchmark", "Params", "MB/s", "alloc B/byte");
+        for (RunResult result : results) {
+            BenchmarkParams params = result.getParams();
+            double size = Double.parseDouble(params.getParam("size"));
+            StringBuilder keys = new StringBuilder();
+            for (String key : params.getParamsKeys()) {
+                if (key.equals("size")) continue;
+                if (keys.length() > 0) keys.append(',');
+                keys.append(params.getParam(key));
+            }
+            String name = params.getBenchmark();
+            name = name.substring(name.lastIndexOf('.', name.lastIndexOf('.') - 1) + 1);
+            double mbPerSecond = result.getPrimaryResult().getScore() * size / 1e6;
+            Result alloc = result.getSecondaryResults().get("gc.alloc.rate.norm");
+            System.out.printf("%-40s %-24s %12.1f %14s%n", name, keys, mbPerSecond,
+                              (alloc == null) ? "-" : String.format("%.3f", alloc.getScore() / size));
+        }
+    }
+}
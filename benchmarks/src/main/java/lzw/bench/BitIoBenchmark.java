@@ -0,0 +1,89 @@
+/*************************************************************************
+ *  Compilation:  mvn -B package
+ *  Execution:    java -jar benchmarks/target/benchmarks.jar BitIoBenchmark
+ *
+ *  Throughput of the bit I/O layer under BinaryStdIn and BinaryStdOut.
+ *
+ *************************************************************************/
+
+package lzw.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *  The <tt>BitIoBenchmark</tt> class measures writing and reading
+ *  <tt>width</tt>-bit values through <tt>BitWriter</tt> and <tt>BitReader</tt>,
+ *  which <tt>BinaryStdOut</tt> and <tt>BinaryStdIn</tt> delegate every call
+ *  to. (The adapters themselves are bound to the standard streams for the life
+ *  of the JVM, so they cannot be pointed at an in-memory buffer.)
+ *  Each operation moves <tt>size</tt> bytes of packed values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitIoBenchmark {
+    @Param({ "1", "9", "12", "16" })
+    public int width;
+
+    @Param({ "1048576" })
+    public int size;
+
+    private int[] values;                   // width-bit values filling size bytes
+    private byte[] packed;                  // values written by BitWriter
+    private ByteArrayOutputStream sink;     // reused output
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1501);
+        values = new int[(int) (8L * size / width)];
+        for (int i = 0; i < values.length; i++)
+            values[i] = random.nextInt(1 << width);
+        sink = new ByteArrayOutputStream(size + 64);
+        write();
+        packed = sink.toByteArray();
+        if (read() != sum(values)) throw new IllegalStateException("Bit I/O round trip failed at width " + width);
+    }
+
+    private static long sum(int[] a) {
+        long sum = 0;
+        for (int x : a) sum += x;
+        return sum;
+    }
+
+    @Benchmark
+    public int write() {
+        sink.reset();
+        Object out = Lzw.newWriter(sink);
+        for (int x : values)
+            Lzw.write(out, x, width);
+        Lzw.flush(out);
+        return sink.size();
+    }
+
+    @Benchmark
+    public long read() {
+        Object in = Lzw.newReader(new ByteArrayInputStream(packed));
+        long sum = 0;
+        for (int i = 0; i < values.length; i++)
+            sum += Lzw.readInt(in, width);
+        return sum;
+    }
+}
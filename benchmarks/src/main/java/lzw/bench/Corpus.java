@@ -0,0 +1,119 @@
+/*************************************************************************
+ *  Compilation:  mvn -B package
+ *
+ *  Deterministic generated inputs for the benchmarks.
+ *
+ *************************************************************************/
+
+package lzw.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ *  The <tt>Corpus</tt> enum generates the benchmark inputs. Each corpus is
+ *  generated from a fixed seed, so every run and every machine measures the
+ *  same bytes.
+ *  <ul>
+ *  <li><tt>TEXT</tt>: English-like prose, words drawn with a skewed distribution
+ *  <li><tt>LOGS</tt>: timestamped server log lines with repeated structure
+ *  <li><tt>RANDOM</tt>: uniformly random bytes, which LZW cannot compress
+ *  <li><tt>REPETITIVE</tt>: fixed-size binary records that differ in a few counters
+ *  </ul>
+ */
+public enum Corpus {
+    TEXT {
+        byte[] generate(Random random, int size) {
+            StringBuilder sb = new StringBuilder(size + 16);
+            int sentence = 0;
+            while (sb.length() < size) {
+                // square the uniform draw so common words dominate, as in prose
+                double u = random.nextDouble();
+                String word = WORDS[(int) (u * u * WORDS.length)];
+                if (sentence == 0) sb.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+                else               sb.append(word);
+                if (++sentence >= 8 + random.nextInt(12)) {
+                    sb.append(random.nextInt(4) == 0 ? ".\n" : ". ");
+                    sentence = 0;
+                }
+                else sb.append(' ');
+            }
+            return sb.toString().getBytes(StandardCharsets.US_ASCII);
+        }
+    },
+    LOGS {
+        byte[] generate(Random random, int size) {
+            StringBuilder sb = new StringBuilder(size + 128);
+            long millis = 0;
+            while (sb.length() < size) {
+                millis += random.nextInt(250);
+                int status = STATUS[random.nextInt(STATUS.length)];
+                sb.append(String.format(Locale.ROOT, "2024-03-%02d %02d:%02d:%02d.%03d %s [worker-%d] %s %s status=%d took=%dms id=%08x\n",
+                          1 + millis / 86_400_000 % 28, millis / 3_600_000 % 24, millis / 60_000 % 60,
+                          millis / 1000 % 60, millis % 1000,
+                          status >= 500 ? "ERROR" : status >= 400 ? "WARN" : "INFO",
+                          random.nextInt(16), METHODS[random.nextInt(METHODS.length)],
+                          PATHS[random.nextInt(PATHS.length)], status, random.nextInt(2000),
+                          random.nextInt()));
+            }
+            return sb.toString().getBytes(StandardCharsets.US_ASCII);
+        }
+    },
+    RANDOM {
+        byte[] generate(Random random, int size) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            return data;
+        }
+    },
+    REPETITIVE {
+        byte[] generate(Random random, int size) {
+            byte[] data = new byte[size];
+            byte[] record = new byte[64];
+            random.nextBytes(record);
+            for (int i = 0; i < size; i++) {
+                int k = i % record.length;
+                if (k == 0) {
+                    // bump a sequence number and, now and then, a flag field
+                    record[0]++;
+                    if (record[0] == 0) record[1]++;
+                    if (random.nextInt(8) == 0) record[8 + random.nextInt(4)] ^= (byte) (1 << random.nextInt(8));
+                }
+                data[i] = record[k];
+            }
+            return data;
+        }
+    };
+
+    private static final long SEED = 1501;
+
+    private static final String[] WORDS = {
+        "the", "of", "and", "to", "a", "in", "is", "that", "it", "for", "was", "on", "with", "as",
+        "by", "at", "be", "this", "from", "or", "which", "an", "are", "not", "but", "have", "one",
+        "codeword", "string", "compression", "dictionary", "symbol", "width", "table", "prefix",
+        "stream", "input", "output", "algorithm", "encoder", "decoder", "pattern", "sequence",
+        "character", "binary", "message", "frequency", "variable", "length", "reset", "monitor",
+        "ratio", "block", "buffer", "trie", "node", "search", "longest", "match", "value"
+    };
+    private static final String[] METHODS = { "GET", "GET", "GET", "POST", "PUT", "DELETE" };
+    private static final String[] PATHS = {
+        "/api/v1/users", "/api/v1/users/profile", "/api/v1/orders", "/api/v1/orders/history",
+        "/api/v2/search?q=compression", "/static/app.js", "/static/style.css", "/health", "/login"
+    };
+    private static final int[] STATUS = { 200, 200, 200, 200, 200, 200, 201, 204, 304, 400, 404, 500 };
+
+    /**
+     * Returns the first <tt>size</tt> bytes of this corpus.
+     * @param size the number of bytes
+     * @return the first <tt>size</tt> bytes of this corpus
+     */
+    public byte[] generate(int size) {
+        byte[] data = generate(new Random(SEED), size);
+        return (data.length == size) ? data : Arrays.copyOf(data, size);
+    }
+
+    // at least size bytes of this corpus, from the given source of randomness
+    abstract byte[] generate(Random random, int size);
+}
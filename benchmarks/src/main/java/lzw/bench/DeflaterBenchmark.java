@@ -0,0 +1,93 @@
+/*************************************************************************
+ *  Compilation:  mvn -B package
+ *  Execution:    java -jar benchmarks/target/benchmarks.jar DeflaterBenchmark
+ *
+ *  Throughput of java.util.zip, as a reference point for the LZW codecs.
+ *
+ *************************************************************************/
+
+package lzw.bench;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *  The <tt>DeflaterBenchmark</tt> class measures {@link Deflater} at its
+ *  default level and {@link Inflater} on <tt>size</tt> bytes of each corpus,
+ *  with reused instances and buffers. Each operation handles <tt>size</tt>
+ *  uncompressed bytes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeflaterBenchmark {
+    @Param({ "TEXT", "LOGS", "RANDOM", "REPETITIVE" })
+    public Corpus corpus;
+
+    @Param({ "1048576" })
+    public int size;
+
+    private byte[] data;                    // uncompressed input
+    private byte[] buffer;                  // reused output
+    private byte[] compressed;              // data deflated
+    private Deflater deflater;
+    private Inflater inflater;
+
+    @Setup
+    public void setup() throws DataFormatException {
+        data = corpus.generate(size);
+        buffer = new byte[size + size / 100 + 1024];
+        deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        inflater = new Inflater();
+        compressed = Arrays.copyOf(buffer, deflate());
+        if (inflate() != size || !Arrays.equals(data, 0, size, buffer, 0, size))
+            throw new IllegalStateException("Deflater round trip failed on " + corpus);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        deflater.end();
+        inflater.end();
+    }
+
+    @Benchmark
+    public int deflate() {
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        int n = 0;
+        while (!deflater.finished())
+            n += deflater.deflate(buffer, n, buffer.length - n);
+        return n;
+    }
+
+    @Benchmark
+    public int inflate() throws DataFormatException {
+        inflater.reset();
+        inflater.setInput(compressed);
+        int n = 0;
+        while (!inflater.finished())
+            n += inflater.inflate(buffer, n, buffer.length - n);
+        return n;
+    }
+}
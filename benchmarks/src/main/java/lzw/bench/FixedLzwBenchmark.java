@@ -0,0 +1,74 @@
+/*************************************************************************
+ *  Compilation:  mvn -B package
+ *  Execution:    java -jar benchmarks/target/benchmarks.jar FixedLzwBenchmark
+ *
+ *  Throughput of fixed-width 12-bit LZW.
+ *
+ *************************************************************************/
+
+package lzw.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *  The <tt>FixedLzwBenchmark</tt> class measures <tt>LZW.compress</tt> and
+ *  <tt>LZW.expand</tt> on <tt>size</tt> bytes of each corpus. Each operation
+ *  handles <tt>size</tt> uncompressed bytes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FixedLzwBenchmark {
+    @Param({ "TEXT", "LOGS", "RANDOM", "REPETITIVE" })
+    public Corpus corpus;
+
+    @Param({ "1048576" })
+    public int size;
+
+    private byte[] data;                    // uncompressed input
+    private byte[] compressed;              // data compressed with 12-bit codewords
+    private ByteArrayOutputStream sink;     // reused output
+
+    @Setup
+    public void setup() {
+        data = corpus.generate(size);
+        sink = new ByteArrayOutputStream(2 * size + 64);
+        compress();
+        compressed = sink.toByteArray();
+        expand();
+        if (!Arrays.equals(data, sink.toByteArray()))
+            throw new IllegalStateException("LZW round trip failed on " + corpus);
+    }
+
+    @Benchmark
+    public int compress() {
+        sink.reset();
+        Lzw.compress(Lzw.newReader(new ByteArrayInputStream(data)), Lzw.newWriter(sink));
+        return sink.size();
+    }
+
+    @Benchmark
+    public int expand() {
+        sink.reset();
+        Lzw.expand(Lzw.newReader(new ByteArrayInputStream(compressed)), Lzw.newWriter(sink));
+        return sink.size();
+    }
+}
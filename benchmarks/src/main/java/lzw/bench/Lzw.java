@@ -0,0 +1,157 @@
+/*************************************************************************
+ *  Compilation:  mvn -B package
+ *
+ *  Method handles onto the LZW classes in the default package.
+ *
+ *************************************************************************/
+
+package lzw.bench;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ *  The <tt>Lzw</tt> class gives the benchmarks access to the compression
+ *  classes, which live in the default package and so cannot be imported from
+ *  a named one (and JMH only runs benchmarks in named packages). Each method
+ *  is bound once to a <tt>static final</tt> {@link MethodHandle} whose
+ *  parameter types are erased to <tt>Object</tt>, so the JIT compiler inlines
+ *  the calls as if they were direct.
+ */
+final class Lzw {
+    private static final MethodHandle NEW_READER;     // new BitReader(InputStream)
+    private static final MethodHandle NEW_WRITER;     // new BitWriter(OutputStream)
+    private static final MethodHandle READ_INT;       // BitReader.readInt(int)
+    private static final MethodHandle WRITE_INT;      // BitWriter.write(int, int)
+    private static final MethodHandle FLUSH;          // BitWriter.flush()
+    private static final MethodHandle MY_COMPRESS;    // MyLZW.compress(char, BitReader, BitWriter)
+    private static final MethodHandle MY_EXPAND;      // MyLZW.expand(BitReader, BitWriter)
+    private static final MethodHandle COMPRESS;       // LZW.compress(BitReader, BitWriter)
+    private static final MethodHandle EXPAND;         // LZW.expand(BitReader, BitWriter)
+    private static final MethodHandle NEW_TST;        // new TST()
+    private static final MethodHandle NEW_MATCH;      // new TST.Match()
+    private static final MethodHandle PUT;            // TST.put(CharSequence, int, int, Object)
+    private static final MethodHandle LONGEST;        // TST.longestPrefixOf(CharSequence, int, Match)
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> reader = Class.forName("BitReader");
+            Class<?> writer = Class.forName("BitWriter");
+            Class<?> tst = Class.forName("TST");
+            Class<?> match = Class.forName("TST$Match");
+            Class<?> myLzw = Class.forName("MyLZW");
+            Class<?> lzw = Class.forName("LZW");
+            MethodType codec = MethodType.methodType(void.class, reader, writer);
+
+            NEW_READER = erase(lookup.findConstructor(reader, MethodType.methodType(void.class, InputStream.class)));
+            NEW_WRITER = erase(lookup.findConstructor(writer, MethodType.methodType(void.class, OutputStream.class)));
+            READ_INT = erase(lookup.findVirtual(reader, "readInt", MethodType.methodType(int.class, int.class)));
+            WRITE_INT = erase(lookup.findVirtual(writer, "write", MethodType.methodType(void.class, int.class, int.class)));
+            FLUSH = erase(lookup.findVirtual(writer, "flush", MethodType.methodType(void.class)));
+            MY_COMPRESS = erase(lookup.findStatic(myLzw, "compress", codec.insertParameterTypes(0, char.class)));
+            MY_EXPAND = erase(lookup.findStatic(myLzw, "expand", codec));
+            COMPRESS = erase(lookup.findStatic(lzw, "compress", codec));
+            EXPAND = erase(lookup.findStatic(lzw, "expand", codec));
+            NEW_TST = erase(lookup.findConstructor(tst, MethodType.methodType(void.class)));
+            NEW_MATCH = erase(lookup.findConstructor(match, MethodType.methodType(void.class)));
+            PUT = erase(lookup.findVirtual(tst, "put", MethodType.methodType(void.class,
+                        CharSequence.class, int.class, int.class, Object.class)));
+            LONGEST = erase(lookup.findVirtual(tst, "longestPrefixOf", MethodType.methodType(int.class,
+                            CharSequence.class, int.class, match)));
+        }
+        catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // don't instantiate
+    private Lzw() { }
+
+    // replace the compression classes in a handle's type with Object
+    private static MethodHandle erase(MethodHandle h) {
+        MethodType type = h.type();
+        for (int i = 0; i < type.parameterCount(); i++) {
+            Class<?> c = type.parameterType(i);
+            if (!c.isPrimitive() && c.getPackageName().isEmpty()) type = type.changeParameterType(i, Object.class);
+        }
+        if (type.returnType().getPackageName().isEmpty() && !type.returnType().isPrimitive())
+            type = type.changeReturnType(Object.class);
+        return h.asType(type);
+    }
+
+    // rethrow a failure from a handle unchecked
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) return (RuntimeException) t;
+        if (t instanceof Error) throw (Error) t;
+        return new RuntimeException(t);
+    }
+
+    static Object newReader(InputStream in) {
+        try { return (Object) NEW_READER.invokeExact(in); }
+        catch (Throwable t) { throw rethrow(t); }
+    }
+
+    static Object newWriter(OutputStream out) {
+        try { return (Object) NEW_WRITER.invokeExact(out); }
+        catch (Throwable t) { throw rethrow(t); }
+    }
+
+    static int readInt(Object reader, int r) {
+        try { return (int) READ_INT.invokeExact(reader, r); }
+        catch (Throwable t) { throw rethrow(t); }
+    }
+
+    static void write(Object writer, int x, int r) {
+        try { WRITE_INT.invokeExact(writer, x, r); }
+        catch (Throwable t) { throw rethrow(t); }
+    }
+
+    static void flush(Object writer) {
+        try { FLUSH.invokeExact(writer); }
+        catch (Throwable t) { throw rethrow(t); }
+    }
+
+    static void myCompress(char mode, Object reader, Object writer) {
+        try { MY_COMPRESS.invokeExact(mode, reader, writer); }
+        catch (Throwable t) { throw rethrow(t); }
+    }
+
+    static void myExpand(Object reader, Object writer) {
+        try { MY_EXPAND.invokeExact(reader, writer); }
+        catch (Throwable t) { throw rethrow(t); }
+    }
+
+    static void compress(Object reader, Object writer) {
+        try { COMPRESS.invokeExact(reader, writer); }
+        catch (Throwable t) { throw rethrow(t); }
+    }
+
+    static void expand(Object reader, Object writer) {
+        try { EXPAND.invokeExact(reader, writer); }
+        catch (Throwable t) { throw rethrow(t); }
+    }
+
+    static Object newTst() {
+        try { return (Object) NEW_TST.invokeExact(); }
+        catch (Throwable t) { throw rethrow(t); }
+    }
+
+    static Object newMatch() {
+        try { return (Object) NEW_MATCH.invokeExact(); }
+        catch (Throwable t) { throw rethrow(t); }
+    }
+
+    static void put(Object tst, CharSequence key, int from, int length, Object value) {
+        try { PUT.invokeExact(tst, key, from, length, value); }
+        catch (Throwable t) { throw rethrow(t); }
+    }
+
+    static int longestPrefixOf(Object tst, CharSequence query, int from, Object match) {
+        try { return (int) LONGEST.invokeExact(tst, query, from, match); }
+        catch (Throwable t) { throw rethrow(t); }
+    }
+}
@@ -0,0 +1,79 @@
+/*************************************************************************
+ *  Compilation:  mvn -B package
+ *  Execution:    java -jar benchmarks/target/benchmarks.jar MyLzwBenchmark
+ *
+ *  Throughput of variable-width LZW in each reset mode.
+ *
+ *************************************************************************/
+
+package lzw.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *  The <tt>MyLzwBenchmark</tt> class measures <tt>MyLZW.compress</tt> and
+ *  <tt>MyLZW.expand</tt> on <tt>size</tt> bytes of each corpus, in each reset
+ *  mode. Each operation handles <tt>size</tt> uncompressed bytes, and the
+ *  output goes to a reused in-memory sink, so the allocation the GC profiler
+ *  reports is the codec's own.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MyLzwBenchmark {
+    @Param({ "TEXT", "LOGS", "RANDOM", "REPETITIVE" })
+    public Corpus corpus;
+
+    @Param({ "n", "r", "m", "w", "l" })
+    public String mode;
+
+    @Param({ "1048576" })
+    public int size;
+
+    private byte[] data;                    // uncompressed input
+    private byte[] compressed;              // data compressed in this mode
+    private ByteArrayOutputStream sink;     // reused output
+
+    @Setup
+    public void setup() {
+        data = corpus.generate(size);
+        sink = new ByteArrayOutputStream(2 * size + 64);
+        compress();
+        compressed = sink.toByteArray();
+        expand();
+        if (!Arrays.equals(data, sink.toByteArray()))
+            throw new IllegalStateException("MyLZW round trip failed on " + corpus + " in mode " + mode);
+    }
+
+    @Benchmark
+    public int compress() {
+        sink.reset();
+        Lzw.myCompress(mode.charAt(0), Lzw.newReader(new ByteArrayInputStream(data)), Lzw.newWriter(sink));
+        return sink.size();
+    }
+
+    @Benchmark
+    public int expand() {
+        sink.reset();
+        Lzw.myExpand(Lzw.newReader(new ByteArrayInputStream(compressed)), Lzw.newWriter(sink));
+        return sink.size();
+    }
+}
@@ -0,0 +1,75 @@
+/*************************************************************************
+ *  Compilation:  mvn -B package
+ *  Execution:    java -jar benchmarks/target/benchmarks.jar TstBenchmark
+ *
+ *  Throughput of the TST operations the LZW compressor relies on.
+ *
+ *************************************************************************/
+
+package lzw.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *  The <tt>TstBenchmark</tt> class measures <tt>TST.put</tt> and
+ *  <tt>TST.longestPrefixOf</tt> on the first <tt>size</tt> bytes of each
+ *  corpus, read as 8-bit characters.
+ *  <p>
+ *  <tt>put</tt> builds a new trie holding, for each offset <em>i</em>, the
+ *  key of length 1 + <em>i</em> mod 16 that starts there. <tt>longestPrefixOf</tt>
+ *  parses the text greedily against a trie built that way, as the LZW
+ *  compressor does. Each operation handles <tt>size</tt> bytes of text.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TstBenchmark {
+    @Param({ "TEXT", "LOGS", "RANDOM", "REPETITIVE" })
+    public Corpus corpus;
+
+    @Param({ "65536" })
+    public int size;
+
+    private String text;                    // the corpus as 8-bit chars
+    private Object trie;                    // TST<Integer> built by put
+    private Object match;                   // reused TST.Match<Integer>
+
+    @Setup
+    public void setup() {
+        text = new String(corpus.generate(size), StandardCharsets.ISO_8859_1);
+        trie = put();
+        match = Lzw.newMatch();
+    }
+
+    @Benchmark
+    public Object put() {
+        Object st = Lzw.newTst();
+        for (int i = 0; i < size; i++)
+            Lzw.put(st, text, i, Math.min(1 + (i & 15), size - i), i);
+        return st;
+    }
+
+    @Benchmark
+    public int longestPrefixOf() {
+        int phrases = 0;
+        for (int i = 0; i < size; phrases++)
+            i += Math.max(Lzw.longestPrefixOf(trie, text, i, match), 1);
+        return phrases;
+    }
+}